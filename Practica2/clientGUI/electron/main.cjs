@@ -42,6 +42,16 @@ ipcMain.on('start-java-client', (event) => {
   runJava('client.jar', []);
 });
 
+// Modo playlist: un solo cliente que pide las canciones al StreamServer y precarga la siguiente
+ipcMain.on('start-java-playlist', (event, server) => {
+  console.log("Iniciando cliente Java en modo playlist...");
+  runJava('client.jar', [`--server=${server || 'localhost:10001'}`, '--playlist']);
+});
+
+// Órdenes por stdin al cliente en modo playlist
+ipcMain.on('playlist-add', (event, song) => sendJavaCommand(`ADD ${song}`));
+ipcMain.on('playlist-skip', () => sendJavaCommand('SKIP'));
+
 // 3. Detener Java
 ipcMain.on('stop-java', () => killJava());
 
@@ -59,21 +69,12 @@ function runJava(jarName, args) {
     console.log(`[Java]: ${msg}`);
     if (mainWindow) mainWindow.webContents.send('java-log', msg);
 
-    if (msg.includes('STATUS:FILE_READY:')) {
-      const parts = msg.split('STATUS:FILE_READY:');
-      if (parts.length > 1) {
-        let path = parts[1];
-
-        if (path.includes('\n')) {
-            path = path.split('\n')[0];
-        }
-        if (path.includes('\r')) {
-            path = path.split('\r')[0];
-        }
-        const finalPath = path.trim();
-        if (mainWindow) {
-          mainWindow.webContents.send('song-received', finalPath);
-        }
+    // En modo playlist llegan varios FILE_READY por proceso (uno por canción que empieza)
+    for (const line of msg.split(/\r?\n/)) {
+      if (!line.includes('STATUS:FILE_READY:')) continue;
+      const finalPath = line.split('STATUS:FILE_READY:')[1].trim();
+      if (mainWindow && finalPath) {
+        mainWindow.webContents.send('song-received', finalPath);
       }
     }
   });
@@ -94,6 +95,12 @@ function runJava(jarName, args) {
   });
 }
 
+function sendJavaCommand(command) {
+  if (javaProcess && javaProcess.stdin.writable) {
+    javaProcess.stdin.write(`${command}\n`);
+  }
+}
+
 function killJava() {
   if (javaProcess) {
     javaProcess.kill();
@@ -4,6 +4,9 @@ contextBridge.exposeInMainWorld('electronAPI', {
   // Enviar órdenes a Node.js
   startClient: () => ipcRenderer.send('start-java-client'),
   stopJava: () => ipcRenderer.send('stop-java'),
+  startPlaylist: (server) => ipcRenderer.send('start-java-playlist', server),
+  queueSong: (song) => ipcRenderer.send('playlist-add', song),
+  skipSong: () => ipcRenderer.send('playlist-skip'),
 
   // Recibir datos de Node.js
   onJavaLog: (callback) => ipcRenderer.on('java-log', (_event, value) => callback(value)),
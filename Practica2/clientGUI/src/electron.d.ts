@@ -5,6 +5,9 @@ declare global {
     electronAPI: {
       startClient: () => void;
       stopJava: () => void;
+      startPlaylist: (server?: string) => void;
+      queueSong: (song: string) => void;
+      skipSong: () => void;
       onJavaLog: (callback: (msg: string) => void) => void;
       onJavaFinished: (callback: (code: number) => void) => void;
       onSongReceived: (callback: (path: string) => void) => void;
@@ -38,7 +38,7 @@ if (!app.isPackaged) {
 
 // 1. Iniciar Server (Emisor)
 ipcMain.on('start-java-server', (event, { filePath }) => {
-  runJava('server.jar', [filePath]);
+  runJava('server.jar', [filePath, '--no-packet-log']);
 });
 
 // 3. Detener Java
@@ -52,9 +52,34 @@ function runJava(jarName, args) {
 
   javaProcess = spawn('java', ['-jar', jarPath, ...args]);
 
-  // Escuchar STDOUT de Java y enviarlo a React
+  // Escuchar STDOUT de Java y enviarlo a React.
+  // Un chunk puede cortar una línea a la mitad: el pedazo final se guarda hasta que llegue el resto
+  let pending = '';
+  javaProcess.stdout.setEncoding('utf8');
   javaProcess.stdout.on('data', (data) => {
-    const msg = data.toString().trim();
+    const lines = (pending + data).split('\n');
+    pending = lines.pop();
+    const log = [];
+
+    lines.forEach(line => {
+      const msg = line.trim();
+      if (!msg) return;
+
+      // Telemetría de la transferencia: CMD:STATS:{json} (una por segundo)
+      if (msg.startsWith('CMD:STATS:')) {
+        try {
+          const stats = JSON.parse(msg.slice('CMD:STATS:'.length));
+          if (mainWindow) mainWindow.webContents.send('transfer-stats', stats);
+        } catch (e) {
+          console.error(`Error procesando ${msg}:`, e);
+        }
+        return;
+      }
+      log.push(msg);
+    });
+
+    if (log.length === 0) return;
+    const msg = log.join('\n');
     console.log(`[Java]: ${msg}`);
     if (mainWindow) mainWindow.webContents.send('java-log', msg);
   });
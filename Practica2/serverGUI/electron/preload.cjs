@@ -8,4 +8,5 @@ contextBridge.exposeInMainWorld('electronAPI', {
   // Recibir datos de Node.js
   onJavaLog: (callback) => ipcRenderer.on('java-log', (_event, value) => callback(value)),
   onJavaFinished: (callback) => ipcRenderer.on('java-process-closed', (_event, code) => callback(code)),
+  onTransferStats: (callback) => ipcRenderer.on('transfer-stats', (_event, stats) => callback(stats)),
 });
\ No newline at end of file
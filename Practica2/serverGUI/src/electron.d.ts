@@ -1,5 +1,23 @@
 export {};
 
+// Línea CMD:STATS:{...} que el emisor imprime cada segundo
+export interface TransferStats {
+  session: string;
+  song: string;
+  elapsed: number;
+  bytes: number;
+  total: number;
+  sent: number;
+  sentBytes: number;
+  retransmitted: number;
+  timeouts: number;
+  acks: number;
+  goodputKBps: number;
+  avgGoodputKBps: number;
+  rttMs: { p50: number; p99: number; max: number };
+  window: { p50: number; max: number };
+}
+
 declare global {
   interface Window {
     electronAPI: {
@@ -7,6 +25,7 @@ declare global {
       stopJava: () => void;
       onJavaLog: (callback: (msg: string) => void) => void;
       onJavaFinished: (callback: (code: number) => void) => void;
+      onTransferStats: (callback: (stats: TransferStats) => void) => void;
     };
   }
 }
\ No newline at end of file
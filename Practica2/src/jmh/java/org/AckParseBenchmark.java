@@ -0,0 +1,108 @@
+package org;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Camino de un ACK en el emisor: del datagrama recibido a Session.onAck y WindowSender, por ACK.
+// Cada invocación confirma en orden una transferencia completa de PACKETS paquetes ya enviados.
+//   heap:   el datagrama en un byte[] nuevo envuelto con ByteBuffer.wrap (como el Server original)
+//   direct: el datagrama copiado a un único buffer directo (como Server/StreamServer con receive())
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class AckParseBenchmark {
+    static final int PACKETS = 1 << 16;
+    static final int PAYLOAD = 64;   // Solo importa la cantidad de paquetes, no su tamaño
+
+    @Param({ "gbn", "sr+sack" })
+    String variant;
+
+    private Path path;
+    private MappedSong song;
+    private byte[][] acks;
+    private final ByteBuffer direct = ByteBuffer.allocateDirect(Protocol.SACK_LENGTH);
+    private final Session.Transport transport = (header, payload) -> { };
+    private Session session;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        path = PacketizationBenchmark.randomFile(PACKETS * PAYLOAD);
+        song = new MappedSong(path, PAYLOAD);
+        song.packetCrc(0);
+
+        boolean sack = variant.endsWith("+sack");
+        acks = new byte[PACKETS][];
+        for(int seq = 0; seq < PACKETS; seq++) {
+            ByteBuffer ack = ByteBuffer.allocate(sack ? Protocol.SACK_LENGTH : Protocol.ACK_LENGTH);
+            if (sack) {
+                Protocol.encodeSack(ack, seq, 0L);
+            } else {
+                ack.putInt(seq);
+            }
+            acks[seq] = ack.array();
+        }
+    }
+
+    // Una sesión nueva con todos los paquetes en vuelo (no se mide)
+    @Setup(Level.Invocation)
+    public void newSession() throws IOException {
+        WindowSender.Mode mode = variant.startsWith("sr") ? WindowSender.Mode.SR : WindowSender.Mode.GBN;
+        long now = System.nanoTime();
+        WindowSender sender = new WindowSender(mode, PACKETS, new FixedWindow(PACKETS),
+                new RttEstimator(1_000_000_000L, 1_000_000L, 60_000_000_000L));
+        session = new Session(new InetSocketAddress("localhost", 10000), "bench", song, sender, transport, now);
+        session.setPacketLog(false);
+        session.setStatsLines(false);
+        session.pump(now);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        song.close();
+        Files.deleteIfExists(path);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PACKETS)
+    public Session heap() throws IOException {
+        long now = System.nanoTime();
+        for(int seq = 0; seq < PACKETS; seq++) {
+            byte[] datagram = acks[seq].clone();
+            session.onAck(ByteBuffer.wrap(datagram), now);
+        }
+        return session;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PACKETS)
+    public Session direct() throws IOException {
+        long now = System.nanoTime();
+        for(int seq = 0; seq < PACKETS; seq++) {
+            direct.clear();
+            direct.put(acks[seq]).flip();
+            session.onAck(direct, now);
+        }
+        return session;
+    }
+}
@@ -0,0 +1,120 @@
+package org;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+// Armado de un paquete de datos [seq][CRC32C][payload] a partir de la canción, por paquete.
+// Los CRC ya están calculados (MappedSong los cachea): solo se mide de dónde salen los bytes.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PacketizationBenchmark {
+    static final int SONG_BYTES = 4 << 20;
+
+    @Param({ "1024", "8964" })
+    int payload;
+
+    private Path path;
+    private byte[] fileBytes;
+    private MappedSong song;
+    private int packets;
+    private int seq = 0;
+
+    private ByteBuffer heapPacket;
+    private ByteBuffer directPacket;
+    private ByteBuffer header;
+
+    @Setup
+    public void setup() throws IOException {
+        path = randomFile(SONG_BYTES);
+        fileBytes = Files.readAllBytes(path);
+        song = new MappedSong(path, payload);
+        song.load();
+        song.packetCrc(0);   // Calcula y cachea todos los CRC
+        packets = song.packetCount();
+        heapPacket = ByteBuffer.allocate(Protocol.DATA_HEADER + payload);
+        directPacket = ByteBuffer.allocateDirect(Protocol.DATA_HEADER + payload);
+        header = ByteBuffer.allocateDirect(Protocol.DATA_HEADER);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        song.close();
+        Files.deleteIfExists(path);
+    }
+
+    private int nextSeq() {
+        int s = seq;
+        seq = s + 1 == packets ? 0 : s + 1;
+        return s;
+    }
+
+    // Como el Server original: fileBytes en el heap y un buffer nuevo por paquete
+    @Benchmark
+    public ByteBuffer heapAllocate() {
+        int s = nextSeq();
+        int start = s * payload;
+        int len = Math.min(payload, fileBytes.length - start);
+        ByteBuffer packet = ByteBuffer.allocate(Protocol.DATA_HEADER + len);
+        packet.putInt(s).putInt(song.packetCrc(s)).put(fileBytes, start, len).flip();
+        return packet;
+    }
+
+    // fileBytes en el heap, copiado a un único buffer reutilizado
+    @Benchmark
+    public ByteBuffer heapReused() {
+        int s = nextSeq();
+        int start = s * payload;
+        int len = Math.min(payload, fileBytes.length - start);
+        heapPacket.clear();
+        heapPacket.putInt(s).putInt(song.packetCrc(s)).put(fileBytes, start, len).flip();
+        return heapPacket;
+    }
+
+    // Del mapeo a un buffer directo reutilizado (MulticastSender)
+    @Benchmark
+    public ByteBuffer mappedToDirect() {
+        int s = nextSeq();
+        directPacket.clear();
+        directPacket.putInt(s).putInt(song.packetCrc(s)).put(song.payload(s)).flip();
+        return directPacket;
+    }
+
+    // Sin copia: cabecera directa + slice del mapeo, para un envío con gather (Session)
+    @Benchmark
+    public void mappedSlice(Blackhole bh) {
+        int s = nextSeq();
+        header.clear();
+        header.putInt(s).putInt(song.packetCrc(s)).flip();
+        bh.consume(header);
+        bh.consume(song.payload(s));
+    }
+
+    static Path randomFile(int size) throws IOException {
+        byte[] data = new byte[size];
+        new Random(42).nextBytes(data);
+        Path path = Files.createTempFile("bench-song", ".mp3");
+        Files.write(path, data);
+        return path;
+    }
+}
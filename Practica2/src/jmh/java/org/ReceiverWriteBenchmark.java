@@ -0,0 +1,130 @@
+package org;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Bucle de escritura del receptor: los payloads de una canción completa, en orden, desde el buffer
+// donde llegó cada datagrama hasta el archivo. Cada invocación escribe un archivo nuevo (truncado);
+// el resultado es en canciones (SONG_BYTES) por milisegundo.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ReceiverWriteBenchmark {
+    static final int SONG_BYTES = 4 << 20;
+    static final int WRITE_BUFFER = 256 * 1024;   // El de ClientSound
+
+    @Param({ "1024", "8964" })
+    int payload;
+
+    private File file;
+    private int packets;
+    private byte[] heapDatagram;       // DatagramSocket.receive() / ReceiveQueue
+    private ByteBuffer directDatagram; // DatagramChannel.receive() en un buffer directo
+
+    @Setup
+    public void setup() throws IOException {
+        file = File.createTempFile("bench-receive", ".mp3");
+        packets = (SONG_BYTES + payload - 1) / payload;
+        heapDatagram = new byte[Protocol.DATA_HEADER + payload];
+        new Random(42).nextBytes(heapDatagram);
+        directDatagram = ByteBuffer.allocateDirect(heapDatagram.length);
+        directDatagram.put(heapDatagram).flip();
+    }
+
+    @TearDown
+    public void tearDown() {
+        file.delete();
+    }
+
+    private int length(int seq) {
+        return Math.min(payload, SONG_BYTES - seq * payload);
+    }
+
+    // ClientSound: BufferedOutputStream de WRITE_BUFFER sobre el archivo
+    @Benchmark
+    public long heapBuffered() throws IOException {
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file), WRITE_BUFFER)) {
+            for(int seq = 0; seq < packets; seq++) {
+                out.write(heapDatagram, Protocol.DATA_HEADER, length(seq));
+            }
+        }
+        return file.length();
+    }
+
+    // El receptor original: un write() al sistema por paquete
+    @Benchmark
+    public long heapUnbuffered() throws IOException {
+        try (OutputStream out = new FileOutputStream(file)) {
+            for(int seq = 0; seq < packets; seq++) {
+                out.write(heapDatagram, Protocol.DATA_HEADER, length(seq));
+            }
+        }
+        return file.length();
+    }
+
+    // MulticastReceiver: escritura posicional envolviendo el arreglo del datagrama. El JDK copia cada
+    // payload a un buffer directo temporal antes del pwrite()
+    @Benchmark
+    public long heapChannel() throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            FileChannel out = raf.getChannel();
+            out.truncate(0);
+            for(int seq = 0; seq < packets; seq++) {
+                out.write(ByteBuffer.wrap(heapDatagram, Protocol.DATA_HEADER, length(seq)), (long)seq * payload);
+            }
+            return out.size();
+        }
+    }
+
+    // Lo mismo si el datagrama llegara con DatagramChannel a un buffer directo: sin copia intermedia
+    @Benchmark
+    public long directChannel() throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            FileChannel out = raf.getChannel();
+            out.truncate(0);
+            for(int seq = 0; seq < packets; seq++) {
+                directDatagram.limit(Protocol.DATA_HEADER + length(seq)).position(Protocol.DATA_HEADER);
+                out.write(directDatagram, (long)seq * payload);
+            }
+            return out.size();
+        }
+    }
+
+    // Archivo mapeado con el tamaño final (se conoce por el START): cada payload es una copia en memoria
+    @Benchmark
+    public long directMapped() throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            FileChannel out = raf.getChannel();
+            out.truncate(0);
+            MappedByteBuffer map = out.map(FileChannel.MapMode.READ_WRITE, 0, SONG_BYTES);
+            for(int seq = 0; seq < packets; seq++) {
+                map.put(seq * payload, directDatagram, Protocol.DATA_HEADER, length(seq));
+            }
+            return out.size();
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package org;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+
+// Envío de ACKs del receptor sin asignar memoria: un solo buffer y un solo DatagramPacket.
+// Política de ACK retrasado para los formatos acumulativos (GBN y SACK):
+//   - se confirma cada 'ackEvery' paquetes en orden,
+//   - o cuando vence 'delay' desde el primer paquete sin confirmar,
+//   - y de inmediato si hay un hueco o llega algo fuera de orden.
+// Los ACKs individuales de Selective Repeat no se pueden agrupar y salen siempre al momento.
+public class AckSender {
+    private final DatagramSocket socket;
+    private final boolean sackFormat;
+    private final int ackEvery;
+    private final long delay;            // Nanoseconds
+
+    private final byte[] bytes = new byte[Protocol.SACK_LENGTH];
+    private final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+    private final DatagramPacket packet = new DatagramPacket(bytes, bytes.length);
+    private boolean hasPeer = false;
+
+    private int pendingCount = 0;
+    private long pendingSince;
+    private int pendingAck;
+    private long pendingBitmap;
+
+    private long sent = 0;
+    private long coalesced = 0;          // Paquetes cuyo ACK se ahorró
+
+    public AckSender(DatagramSocket socket, boolean sackFormat, int ackEvery, long delay) {
+        this.socket = socket;
+        this.sackFormat = sackFormat;
+        this.ackEvery = Math.max(1, ackEvery);
+        this.delay = delay;
+    }
+
+    public void setPeer(InetAddress address, int port) {
+        if (hasPeer && port == packet.getPort() && address.equals(packet.getAddress())) return;
+        packet.setAddress(address);
+        packet.setPort(port);
+        hasPeer = true;
+    }
+
+    // ACK acumulativo (más bitmap si se usa SACK). 'immediate' ante huecos o desorden.
+    public void schedule(int cumAck, long bitmap, boolean immediate, long now) throws IOException {
+        if (pendingCount == 0) pendingSince = now;
+        pendingCount++;
+        pendingAck = cumAck;
+        pendingBitmap = bitmap;
+
+        if (immediate || pendingCount >= ackEvery) {
+            flush();
+        }
+    }
+
+    // ACK individual (Selective Repeat sin SACK)
+    public void sendNow(int seq) throws IOException {
+        buffer.clear();
+        buffer.putInt(seq);
+        transmit(Protocol.ACK_LENGTH);
+    }
+
+    // Paquete de control [int código][int valor] (p. ej. PROBE_ACK)
+    public void sendControl(int code, int value) throws IOException {
+        buffer.clear();
+        buffer.putInt(code).putInt(value);
+        transmit(8);
+    }
+
+    public void flush() throws IOException {
+        if (pendingCount == 0) return;
+        if (sackFormat) {
+            Protocol.encodeSack(buffer, pendingAck, pendingBitmap);
+            transmit(Protocol.SACK_LENGTH);
+        } else {
+            buffer.clear();
+            buffer.putInt(pendingAck);
+            transmit(Protocol.ACK_LENGTH);
+        }
+        coalesced += pendingCount - 1;
+        pendingCount = 0;
+    }
+
+    public boolean hasPending() {
+        return pendingCount > 0;
+    }
+
+    // Milisegundos hasta que vence el ACK retrasado (al menos 1, que es la resolución de SO_TIMEOUT)
+    public int millisUntilDue(long now) {
+        long remaining = pendingSince + delay - now;
+        return (int)Math.max(1, (remaining + 999_999) / 1_000_000);
+    }
+
+    public boolean isDue(long now) {
+        return pendingCount > 0 && now - pendingSince >= delay;
+    }
+
+    private void transmit(int length) throws IOException {
+        packet.setLength(length);
+        socket.send(packet);
+        sent++;
+    }
+
+    public long getSent() {
+        return sent;
+    }
+
+    public long getCoalesced() {
+        return coalesced;
+    }
+}
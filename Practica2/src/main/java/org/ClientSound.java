@@ -1,109 +1,566 @@
 package org;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.net.DatagramPacket;
 import java.net.DatagramSocket;
-import java.net.InetAddress;
-import java.net.SocketTimeoutException;
+import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.zip.CRC32C;
+import java.util.concurrent.TimeUnit;
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.OutputStream;
 import javazoom.jl.player.Player;
 // mvn exec:java -Dexec.mainClass="org.ClientSound"
 
 public class ClientSound {
     private static final int PORT = 10000;
+    private static final int MULTICAST_PORT = 10003;
     private static final int PACKET_SIZE = 2048;
+    private static final int RECEIVE_WINDOW = 64;   // Ventana del buffer de reordenamiento (SR)
+    private static final int STREAM_BUFFER = 1 << 20;   // Bytes del buffer circular (--stream)
+    private static final int PREBUFFER = 64 * 1024;     // Bytes antes de empezar a sonar (--stream)
+    private static final int REQUEST_TIMEOUT = 1000;    // Milliseconds entre reintentos de la solicitud
+    private static final int REQUEST_RETRIES = 5;
+    private static final int IDLE_TIMEOUT = 5000;       // Milliseconds sin paquetes para dar por terminada la transferencia
+    private static final int RCVBUF = 4 << 20;          // SO_RCVBUF pedido (el kernel puede recortarlo)
+    private static final int QUEUE_SLOTS = 512;         // Datagramas preasignados entre el hilo receptor y el de proceso
+    private static final int WRITE_BUFFER = 256 * 1024; // Escrituras a disco en bloques grandes
+    private static final long CHECKPOINT_INTERVAL = 1_000_000_000L;   // Nanoseconds entre checkpoints de reanudación
 
+    // Uso: client.jar [--mode=gbn|sr] [--window=64] [--sack]
+    //                 [--ack-every=1] [--ack-delay=2] (ms, ACK retrasado para GBN y SACK)
+    //                 [--payload=N] (payload máximo aceptado) [--probe] (búsqueda de MTU, modo solicitud)
+    //                 [--fec=K] (paridad XOR cada K paquetes; en modo push el emisor usa el mismo K)
+    //                 [--stream] [--stream-buffer=1048576] [--prebuffer=65536]
+    //                 [--rcvbuf=4194304] [--queue=512] (buffer del socket y datagramas en cola)
+    //                 [--server=host:10001 --song=nombre.mp3 [--port=0]]   (pide la canción a un StreamServer)
+    //                 [--no-resume] (modo solicitud: no retomar una descarga interrumpida)
+    //                 [--port=10000] (modo push: puerto donde escucha) [--no-play] (solo descargar y verificar)
+    //      client.jar --multicast=239.1.2.3:10003 [--interface=eth0] [--rcvbuf] [--queue] [--no-play]
+    //      client.jar --server=host:10001 --playlist [--prefetch=1] [--cache-dir=...] [--cache-mb=64] [--no-play]
+    //                 (canciones por stdin, ver PlaylistPlayer)
     public static void main(String[] args) {
         try {
-            DatagramSocket socket = new DatagramSocket(PORT);
-            socket.setSoTimeout(5000); // Timeout para saber cuándo termina
+            Options opts = Options.parse(args);
+            if (opts.has("multicast")) {
+                receiveMulticast(opts);
+                return;
+            }
+            if (opts.has("playlist")) {
+                if (!opts.has("server") || opts.has("stream")) {
+                    System.out.println("--playlist needs --server and does not combine with --stream");
+                    System.exit(1);
+                }
+                new PlaylistPlayer(opts).run();
+                System.exit(0);
+            }
+            Download download = download(opts, opts.get("song", ""));
+            File tempFile = download.file;
+            StreamBuffer stream = download.stream;
+            if (download.failure != null) {
+                System.out.println(download.failure + tempFile.getAbsolutePath());
+                if (stream != null) stream.close();   // Deja de sonar
+                System.exit(1);
+            }
 
-            byte[] receiveData = new byte[PACKET_SIZE];
-            System.out.println("Client waiting for packets...");
+            System.out.println("STATUS:FILE_READY:" + tempFile.getAbsolutePath());
+            if (opts.has("no-play") && stream == null) {
+                System.exit(0);
+            }
 
-            File tempFile = File.createTempFile("temp", ".mp3");
-            FileOutputStream fileOutputStream = new FileOutputStream(tempFile);
+            if (stream != null) {
+                // La reproducción ya empezó durante la recepción: solo falta vaciar el buffer
+                stream.finish();
+                download.playerThread.join();
+                System.out.println("Reproducción terminada. Underruns: " + stream.getUnderruns());
+                System.out.println("Programa terminado exitosamente.");
+                System.exit(0);
+            }
             
+            // --- FASE DE REPRODUCCIÓN ---
+            playFile(tempFile);
+            System.out.println("Programa terminado exitosamente.");
+            System.exit(0);
+        } catch (TransferFailed e) {
+            System.out.println(e.getMessage());
+            System.exit(1);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    // Recibe una canción (push, o pedida por nombre con --server) en un archivo temporal y la
+    // verifica. Con --stream la reproducción empieza durante la recepción.
+    static Download download(Options opts, String song) throws Exception {
+        WindowSender.Mode mode = WindowSender.Mode.parse(opts.get("mode", "gbn"));
+        // SACK: ACK acumulativo + bitmap de lo recibido fuera de orden (necesita el buffer de reordenamiento)
+        boolean sack = opts.has("sack");
+        // FEC: los paquetes reconstruidos pueden llegar adelantados, así que también usa el buffer
+        // de reordenamiento; en GBN se confirma con ACK acumulativo + bitmap, que el emisor entiende
+        int fecK = opts.getInt("fec", 0);
+        if (fecK > 0 && mode == WindowSender.Mode.GBN) sack = true;
+        ReorderBuffer reorder = mode == WindowSender.Mode.SR || sack
+                ? new ReorderBuffer(opts.getInt("window", RECEIVE_WINDOW))
+                : null;
+
+        // Modo solicitud: el receptor pide la canción; si no, espera a que el emisor la empuje a PORT
+        InetSocketAddress server = opts.has("server") ? Options.parseAddress(opts.get("server", ""), 10001) : null;
+        // Payload máximo que se acepta: dimensiona el buffer de recepción hasta que llegue START
+        int maxPayload = opts.getInt("payload", opts.has("probe") ? Protocol.MAX_PAYLOAD : 0);
+        ByteBuffer request = null;
+        // Descarga interrumpida de la misma canción: se pide solo lo que falta. Con --stream no se
+        // reanuda, porque la reproducción empezaría a mitad de la canción.
+        ResumeCheckpoint checkpoint = null;
+        long resumeOffset = 0;
+        DatagramSocket socket = null;
+        ReceiveQueue queue = null;
+        FileOutputStream rawFile = null;
+        OutputStream fileOutputStream = null;
+        StreamBuffer stream = null;
+        boolean completed = false;
+        try {
+            if (server != null && !opts.has("stream") && !opts.has("no-resume")) {
+                checkpoint = ResumeCheckpoint.open(server, song);
+                if (checkpoint != null) resumeOffset = checkpoint.resumeOffset();
+                if (resumeOffset > 0) System.out.println("Resuming from byte " + resumeOffset + " (" + checkpoint.getTempFile() + ")");
+            }
+            if (server != null) {
+                Protocol.Request req = new Protocol.Request(song, mode);
+                req.sack = sack;
+                req.maxPayload = maxPayload;
+                req.probe = opts.has("probe");
+                req.fec = fecK;
+                if (checkpoint != null) {
+                    req.resumeOffset = (int)resumeOffset;
+                    req.fileId = checkpoint.getFileId();
+                }
+                request = Protocol.encodeRequest(req);
+            }
+
+            socket = new DatagramSocket(opts.getInt("port", server != null ? 0 : PORT));
+            socket.setReceiveBufferSize(opts.getInt("rcvbuf", RCVBUF));
+            int idleTimeout = IDLE_TIMEOUT; // Timeout para saber cuándo termina
+            int requestsSent = 0;
+            if (request != null) {
+                idleTimeout = REQUEST_TIMEOUT;
+                sendRequest(socket, request, server);
+                requestsSent++;
+            }
+
+            AckSender acks = new AckSender(socket, sack, opts.getInt("ack-every", 1),
+                    TimeUnit.MILLISECONDS.toNanos(opts.getInt("ack-delay", 2)));
+
+            // Con FEC la paridad lleva una cabecera más larga que los datos
+            int extraHeader = fecK > 0 ? Protocol.PARITY_HEADER - Protocol.DATA_HEADER : 0;
+            int slotSize = maxPayload > 0 ? Protocol.DATA_HEADER + maxPayload + extraHeader : PACKET_SIZE;
+            // Un hilo vacía el socket hacia la cola; este hilo procesa, confirma y escribe
+            queue = new ReceiveQueue(socket, opts.getInt("queue", QUEUE_SLOTS), slotSize);
+            queue.start();
+            System.out.println("Client waiting for packets (" + mode + ", SO_RCVBUF " + socket.getReceiveBufferSize() + " bytes)...");
+
+            File tempFile = resumeOffset > 0 ? checkpoint.getTempFile() : File.createTempFile("temp", ".mp3");
+            if (checkpoint != null) checkpoint.setTempFile(tempFile);
+            // SHA-256 incremental de los bytes en orden: al llegar el FIN no hay que releer el archivo
+            MessageDigest sha = MessageDigest.getInstance("SHA-256");
+            // En modo append: al reanudar se trunca hasta el primer paquete que manda el servidor
+            rawFile = new FileOutputStream(tempFile, true);
+            fileOutputStream = new DigestOutputStream(new BufferedOutputStream(rawFile, WRITE_BUFFER), sha);
+
+            // Modo streaming: los bytes en orden van también a un buffer circular que lee el Player
+            Thread playerThread = null;
+            OutputStream sink = fileOutputStream;
+            if (opts.has("stream")) {
+                stream = new StreamBuffer(opts.getInt("stream-buffer", STREAM_BUFFER));
+                playerThread = startStreamingPlayer(stream, opts.getInt("prebuffer", PREBUFFER));
+                sink = new TeeOutputStream(fileOutputStream, stream);
+            }
+
             int expectedSeq = 0;
             boolean transferStarted = false;
+            boolean dataStarted = false;
+            boolean startSeen = false;   // El servidor repite el START hasta que le llega un ACK
+            boolean resumable = false;   // El servidor mandó START con el id del archivo
+            long lastCheckpoint = System.nanoTime();
+            boolean finReceived = false;
+            byte[] expectedHash = null;     // SHA-256 que trae el FIN
+            CRC32C crc = new CRC32C();
+            int corrupt = 0;
+
+            // Un paquete reconstruido por FEC se entrega como si hubiera llegado por la red
+            FecDecoder fec = null;
+            final boolean sackAcks = sack;
+            final OutputStream delivery = sink;
+            FecDecoder.RecoveredSink recovered = (seq, data, length) -> {
+                if (!reorder.inWindow(seq)) return;
+                reorder.store(seq, data, 0, length);
+                if (!sackAcks) acks.sendNow(seq);
+                reorder.drainTo(delivery);
+            };
 
             // --- FASE DE RECEPCIÓN ---
             while(true) {
+                // Si hay un ACK retrasado pendiente, solo se espera hasta que venza
+                ReceiveQueue.Slot slot = queue.poll(acks.hasPending() ? acks.millisUntilDue(System.nanoTime()) : idleTimeout);
+                if (slot == null) {
+                    if (acks.isDue(System.nanoTime())) {
+                        // Venció el temporizador del ACK retrasado
+                        acks.flush();
+                        continue;
+                    }
+                    if (transferStarted) {
+                        System.out.println("Timeout: Transmisión finalizada.");
+                        if (resumable) {
+                            // Sin FIN: la descarga quedó incompleta, la próxima ejecución la retoma
+                            fileOutputStream.flush();
+                            checkpoint.save((reorder != null ? reorder.getExpected() : expectedSeq) - 1);
+                            System.out.println("Transfer incomplete; run again to resume from byte " + checkpoint.resumeOffset());
+                        }
+                        break;
+                    }
+                    if (request != null) {
+                        // La solicitud o la respuesta se perdió: se reintenta
+                        if (requestsSent >= REQUEST_RETRIES) {
+                            fileOutputStream.close();
+                            if (resumeOffset == 0) tempFile.delete();   // Lo ya descargado se conserva para reanudar
+                            throw new TransferFailed("Server " + server + " did not answer.");
+                        }
+                        sendRequest(socket, request, server);
+                        requestsSent++;
+                    }
+                    continue;
+                }
+
                 try {
-                    DatagramPacket packet = new DatagramPacket(receiveData, receiveData.length);
-                    socket.receive(packet);
+                    idleTimeout = IDLE_TIMEOUT;
                     transferStarted = true;
 
-                    byte[] data = packet.getData();
+                    DatagramPacket packet = slot.packet();
+                    ByteBuffer receiveBuffer = slot.buffer();
+                    byte[] data = slot.data();
                     if (packet.getLength() < 4) continue;
 
-                    int seq = ByteBuffer.wrap(data, 0, 4).getInt();
+                    int seq = receiveBuffer.getInt(0);
                     int dataLength = packet.getLength() - 4;
-                    InetAddress serverAddress = packet.getAddress();
-                    int serverPort = packet.getPort();
+                    acks.setPeer(packet.getAddress(), packet.getPort());
+                    long now = System.nanoTime();
+
+                    if (seq == Protocol.PROBE) {
+                        // Sonda de MTU: se confirma solo si llegó completa (no truncada por el buffer)
+                        int probeSize = receiveBuffer.getInt(4);
+                        if (packet.getLength() == probeSize) acks.sendControl(Protocol.PROBE_ACK, probeSize);
+                        continue;
+                    }
+                    if (seq == Protocol.START) {
+                        if (startSeen) continue;
+                        startSeen = true;
+                        // Payload negociado: el buffer de recepción se ajusta a él
+                        int negotiated = receiveBuffer.getInt(4);
+                        System.out.println("Negotiated payload: " + negotiated + " bytes");
+                        queue.setSlotSize(Protocol.DATA_HEADER + negotiated + extraHeader);
+                        if (packet.getLength() >= 16 && checkpoint != null && !dataStarted) {
+                            // Primer paquete que enviará el servidor: lo anterior ya está en el archivo
+                            int firstSeq = receiveBuffer.getInt(8);
+                            rawFile.getChannel().truncate((long)firstSeq * negotiated);
+                            // Lo ya descargado entra al hash una sola vez; lo nuevo se suma al escribirse
+                            sha.reset();
+                            hashPrefix(tempFile, (long)firstSeq * negotiated, sha);
+                            expectedSeq = firstSeq;
+                            if (reorder != null) reorder.startAt(firstSeq);
+                            checkpoint.begin(receiveBuffer.getInt(12), negotiated);
+                            resumable = true;
+                            if (firstSeq > 0) System.out.println("Server resumes at seq " + firstSeq);
+                        }
+                        continue;
+                    }
+                    if (seq == Protocol.ERROR) {
+                        fileOutputStream.close();
+                        tempFile.delete();
+                        if (checkpoint != null) checkpoint.delete();
+                        throw new TransferFailed("Server error: " + new String(data, 4, dataLength, StandardCharsets.UTF_8));
+                    }
 
                     // Detectar fin (paquete vacío o código -1)
-                    if (seq == -1 || dataLength == 0) {
+                    if (seq == Protocol.FIN || dataLength == 0) {
+                        acks.flush();
                         System.out.println("Fin de transmisión recibido.");
+                        finReceived = true;
+                        if (seq == Protocol.FIN && dataLength >= Protocol.HASH_LENGTH) {
+                            expectedHash = Arrays.copyOfRange(data, 4, 4 + Protocol.HASH_LENGTH);
+                        }
+                        if (checkpoint != null) checkpoint.delete();
                         break;
                     }
+                    if (seq == Protocol.PARITY) {
+                        if (fecK == 0) continue;
+                        if (packet.getLength() < Protocol.PARITY_HEADER
+                                || !crcMatches(crc, data, Protocol.PARITY_HEADER, packet.getLength() - Protocol.PARITY_HEADER, receiveBuffer.getInt(16))) {
+                            corrupt++;
+                            continue;
+                        }
+                        if (fec == null) fec = new FecDecoder(fecK, queue.getSlotSize());
+                        int before = fec.getRecovered();
+                        fec.onParity(receiveBuffer, packet.getLength(), recovered);
+                        if (sack && fec.getRecovered() != before) {
+                            long bitmap = reorder.sackBitmap();
+                            acks.schedule(reorder.getExpected() - 1, bitmap, bitmap != 0, now);
+                        }
+                        continue;
+                    }
+                    if (seq < 0) continue;   // Control desconocido
+
+                    // CRC32C del payload: un paquete dañado se descarta como si se hubiera perdido
+                    int payloadLength = packet.getLength() - Protocol.DATA_HEADER;
+                    if (payloadLength < 0 || !crcMatches(crc, data, Protocol.DATA_HEADER, payloadLength, receiveBuffer.getInt(4))) {
+                        corrupt++;
+                        continue;
+                    }
+
+                    if (!dataStarted) {
+                        // Con parte ya descargada, sin START no se sabe desde dónde manda el servidor:
+                        // solo el seq 0 dice que empieza de cero. Lo demás se descarta hasta que llegue
+                        // el START (el servidor lo repite), para no truncar lo que ya estaba.
+                        if (!resumable && resumeOffset > 0 && seq != 0) continue;
+                        dataStarted = true;
+                        // Servidor sin reanudación: manda todo desde el principio
+                        if (!resumable) rawFile.getChannel().truncate(0);
+                    }
+
+                    if (fecK > 0) {
+                        if (fec == null) fec = new FecDecoder(fecK, queue.getSlotSize());
+                        fec.onData(seq, data, Protocol.DATA_HEADER, payloadLength, recovered);
+                        fec.release(reorder.getExpected());
+                    }
 
-                    if(seq == expectedSeq) {
-                        if (dataLength > 0) {
-                            fileOutputStream.write(data, 4, dataLength);
+                    if (sack) {
+                        // SACK: se guarda lo que cabe en la ventana y siempre se informa el estado completo
+                        boolean inOrder = seq == reorder.getExpected();
+                        if (reorder.inWindow(seq)) {
+                            reorder.store(seq, data, Protocol.DATA_HEADER, payloadLength);
+                            reorder.drainTo(sink);
+                            if (seq % 100 == 0) System.out.println("Received: " + seq);
+                        }
+                        long bitmap = reorder.sackBitmap();
+                        // Desorden, duplicado o huecos pendientes: el emisor tiene que saberlo ya
+                        acks.schedule(reorder.getExpected() - 1, bitmap, !inOrder || bitmap != 0, now);
+                    }
+                    else if (reorder != null) {
+                        // Selective Repeat: se confirma cada paquete y se guardan los adelantados
+                        if (reorder.inWindow(seq)) {
+                            reorder.store(seq, data, Protocol.DATA_HEADER, payloadLength);
+                            acks.sendNow(seq);
+                            reorder.drainTo(sink);
+                            if (seq % 100 == 0) System.out.println("Received: " + seq);
+                        }
+                        else if (seq < reorder.getExpected()) {
+                            // Ya entregado: el ACK se perdió, se vuelve a confirmar
+                            acks.sendNow(seq);
+                        }
+                    }
+                    else if(seq == expectedSeq) {
+                        if (payloadLength > 0) {
+                            sink.write(data, Protocol.DATA_HEADER, payloadLength);
                         }
                         if (seq % 100 == 0) System.out.println("Received correct: " + seq);
-                        
-                        sendAck(socket, seq, serverAddress, serverPort);
+                    
+                        acks.schedule(seq, 0, false, now);
                         expectedSeq++;
                     }
                     else {
-                        sendAck(socket, expectedSeq - 1, serverAddress, serverPort);
+                        // Hueco: ACK duplicado inmediato para el fast retransmit del emisor
+                        acks.schedule(expectedSeq - 1, 0, true, now);
                     }
 
-                } catch (SocketTimeoutException e) {
-                    if (transferStarted) {
-                        System.out.println("Timeout: Transmisión finalizada.");
-                        break;
-                    }
+                } finally {
+                    queue.release(slot);
+                }
+
+                if (resumable && System.nanoTime() - lastCheckpoint >= CHECKPOINT_INTERVAL) {
+                    fileOutputStream.flush();
+                    checkpoint.save((reorder != null ? reorder.getExpected() : expectedSeq) - 1);
+                    lastCheckpoint = System.nanoTime();
                 }
             }
 
-            // Cerrar recursos de red
-            socket.close();
+            if (fec != null) {
+                fec.release(reorder.getExpected());
+                System.out.println("FEC recovered packets: " + fec.getRecovered() + ", unrecoverable: " + fec.getUnrecoverable());
+            }
+            System.out.println(queue);
+            if (corrupt > 0) {
+                System.out.println("Corrupt packets discarded (CRC32C): " + corrupt);
+            }
+            if (acks.getCoalesced() > 0) {
+                System.out.println("ACKs sent: " + acks.getSent() + ", coalesced: " + acks.getCoalesced());
+            }
+
+            // Cerrar recursos de red (el finally también, pero el archivo tiene que quedar escrito antes de verificar)
+            queue.close();
             fileOutputStream.close();
 
-            System.out.println("STATUS:FILE_READY:" + tempFile.getAbsolutePath());
-            
-            // --- FASE DE REPRODUCCIÓN ---
-            System.out.println("Preparando reproducción desde archivo...");
-            System.out.println("Tamaño total del archivo en disco: " + tempFile.length() + " bytes");
-            
-            FileInputStream fis = new FileInputStream(tempFile);
+            // Solo se reproduce un archivo completo y, si el emisor mandó el hash, verificado
+            String failure = null;
+            if (!finReceived) {
+                System.out.println("Transfer incomplete: no FIN received, file not verified");
+                failure = "STATUS:FILE_INCOMPLETE:";
+            } else if (expectedHash != null) {
+                byte[] actual = sha.digest();
+                if (MessageDigest.isEqual(expectedHash, actual)) {
+                    System.out.println("SHA-256 verified: " + toHex(actual));
+                } else {
+                    System.out.println("SHA-256 mismatch: expected " + toHex(expectedHash) + ", got " + toHex(actual));
+                    failure = "STATUS:FILE_CORRUPT:";
+                }
+            }
+            completed = true;
+            return new Download(tempFile, failure, stream, playerThread);
+        } finally {
+            // Con cualquier error a mitad de camino: en --playlist el proceso sigue, y un lock del
+            // checkpoint sin soltar impediría volver a descargar la misma canción
+            closeQuietly(queue != null ? queue : socket);
+            closeQuietly(fileOutputStream != null ? fileOutputStream : rawFile);
+            closeQuietly(checkpoint);
+            if (!completed && stream != null) stream.close();   // Deja de sonar
+        }
+    }
+
+    // Resultado de download(): failure es el prefijo STATUS: del error, o null si el archivo está verificado
+    static final class Download {
+        final File file;
+        final String failure;
+        final StreamBuffer stream;        // Solo con --stream
+        final Thread playerThread;
+
+        Download(File file, String failure, StreamBuffer stream, Thread playerThread) {
+            this.file = file;
+            this.failure = failure;
+            this.stream = stream;
+            this.playerThread = playerThread;
+        }
+    }
+
+    // El servidor no contestó o rechazó la solicitud
+    static final class TransferFailed extends IOException {
+        private static final long serialVersionUID = 1L;
 
-            // 4. Iniciar el reproductor
+        TransferFailed(String message) {
+            super(message);
+        }
+    }
+
+    static void playFile(File file) throws Exception {
+        System.out.println("Preparando reproducción desde archivo...");
+        System.out.println("Tamaño total del archivo en disco: " + file.length() + " bytes");
+
+        try (FileInputStream fis = new FileInputStream(file)) {
             Player player = new Player(fis);
             System.out.println("Reproduciendo música...");
             player.play(); // Esto detendrá el programa hasta que termine la canción
-            
-            System.out.println("Reproducción terminada.");
-            fis.close();
+        }
+        System.out.println("Reproducción terminada.");
+    }
 
-            System.out.println("Programa terminado exitosamente.");
-            System.exit(0);
-        } catch (Exception e) {
-            e.printStackTrace();
+    // Modo multicast: se une al grupo, repara con NACKs y reproduce el archivo verificado
+    private static void receiveMulticast(Options opts) throws Exception {
+        InetSocketAddress group = Options.parseAddress(opts.get("multicast", ""), MULTICAST_PORT);
+        MulticastReceiver receiver = new MulticastReceiver(group, MulticastSender.multicastInterface(opts),
+                opts.getInt("rcvbuf", RCVBUF), opts.getInt("queue", QUEUE_SLOTS));
+        File tempFile = File.createTempFile("temp", ".mp3");
+        MulticastReceiver.Outcome outcome = receiver.receive(tempFile);
+        if (outcome != MulticastReceiver.Outcome.READY) {
+            System.out.println((outcome == MulticastReceiver.Outcome.CORRUPT ? "STATUS:FILE_CORRUPT:" : "STATUS:FILE_INCOMPLETE:")
+                    + tempFile.getAbsolutePath());
+            System.exit(1);
+        }
+        System.out.println("STATUS:FILE_READY:" + tempFile.getAbsolutePath());
+        if (!opts.has("no-play")) playFile(tempFile);
+        System.exit(0);
+    }
+
+    // Hilo del reproductor: espera el prebuffer y reproduce desde el buffer circular
+    private static Thread startStreamingPlayer(StreamBuffer stream, int prebuffer) {
+        Thread thread = new Thread(() -> {
+            try {
+                stream.awaitPrebuffer(prebuffer);
+                System.out.println("Reproduciendo música (streaming, " + stream.available() + " bytes en buffer)...");
+                Player player = new Player(stream);
+                player.play();
+            } catch (Exception e) {
+                e.printStackTrace();
+            } finally {
+                stream.close();
+            }
+        }, "player");
+        thread.start();
+        return thread;
+    }
+
+    // Escribe los bytes en orden en el archivo temporal y en el buffer de reproducción
+    private static class TeeOutputStream extends OutputStream {
+        private final OutputStream file;
+        private final StreamBuffer stream;
+
+        TeeOutputStream(OutputStream file, StreamBuffer stream) {
+            this.file = file;
+            this.stream = stream;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte)b }, 0, 1);
         }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            file.write(b, off, len);
+            stream.write(b, off, len);
+        }
+    }
+
+    private static boolean crcMatches(CRC32C crc, byte[] data, int offset, int length, int expected) {
+        crc.reset();
+        crc.update(data, offset, length);
+        return (int)crc.getValue() == expected;
+    }
+
+    // Un error al cerrar no debe impedir soltar lo demás
+    private static void closeQuietly(Closeable resource) {
+        if (resource == null) return;
+        try {
+            resource.close();
+        } catch (IOException e) {
+            System.out.println("Error closing " + resource.getClass().getSimpleName() + ": " + e.getMessage());
+        }
+    }
+
+    // Suma al hash los primeros 'length' bytes de un archivo (lo ya descargado al reanudar)
+    private static void hashPrefix(File file, long length, MessageDigest digest) throws IOException {
+        byte[] buffer = new byte[64 * 1024];
+        try (FileInputStream in = new FileInputStream(file)) {
+            while(length > 0) {
+                int n = in.read(buffer, 0, (int)Math.min(buffer.length, length));
+                if (n < 0) break;
+                digest.update(buffer, 0, n);
+                length -= n;
+            }
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) hex.append(String.format("%02x", b));
+        return hex.toString();
     }
 
-    private static void sendAck(DatagramSocket socket, int seq, InetAddress address, int port) throws IOException {
-        ByteBuffer buffer = ByteBuffer.allocate(4);
-        buffer.putInt(seq);
-        byte[] ackBytes = buffer.array();
-        DatagramPacket ackPacket = new DatagramPacket(ackBytes, ackBytes.length, address, port);
-        socket.send(ackPacket);
+    private static void sendRequest(DatagramSocket socket, ByteBuffer request, InetSocketAddress server) throws IOException {
+        socket.send(new DatagramPacket(request.array(), request.limit(), server));
+        System.out.println("Requested song from " + server);
     }
 }
\ No newline at end of file
@@ -0,0 +1,24 @@
+package org;
+
+// Algoritmo de control de congestión del emisor.
+// La ventana se mide en paquetes y se ajusta con las señales de ACK y pérdida de WindowSender.
+public interface CongestionControl {
+    // Paquetes que pueden estar en vuelo
+    int window();
+
+    // Se confirmaron 'newlyAcked' paquetes nuevos
+    void onAck(int newlyAcked);
+
+    // Pérdida detectada por ACKs duplicados / huecos (la red sigue entregando)
+    void onLoss();
+
+    // Venció un temporizador de retransmisión
+    void onTimeout();
+
+    static CongestionControl create(String name, int initialWindow, int maxWindow) {
+        if (name != null && name.trim().equalsIgnoreCase("fixed")) {
+            return new FixedWindow(initialWindow);
+        }
+        return new RenoCongestionControl(maxWindow);
+    }
+}
@@ -0,0 +1,129 @@
+package org;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+// FEC por XOR del lado del receptor. Por cada bloque de K paquetes se acumula el XOR de todo lo
+// recibido (datos y paridad); cuando falta exactamente un paquete y ya llegó la paridad, el
+// acumulado es el paquete perdido.
+public class FecDecoder {
+    // Paquete reconstruido, listo para entregarse como si hubiera llegado por la red
+    public interface RecoveredSink {
+        void accept(int seq, byte[] data, int length) throws IOException;
+    }
+
+    private final int k;
+    private final int payloadSize;
+    private final Map<Integer, Block> blocks = new HashMap<>();
+    private int releasedBelow = 0;   // Bloques anteriores ya entregados: se ignoran sus duplicados
+
+    private int recovered = 0;
+    private int unrecoverable = 0;
+
+    public FecDecoder(int k, int payloadSize) {
+        if (k < 2 || k > FecEncoder.MAX_K) throw new IllegalArgumentException("FEC block size must be 2.." + FecEncoder.MAX_K + ": " + k);
+        this.k = k;
+        this.payloadSize = payloadSize;
+    }
+
+    public void onData(int seq, byte[] data, int offset, int length, RecoveredSink sink) throws IOException {
+        if (seq / k < releasedBelow || length > payloadSize) return;
+        Block block = blocks.computeIfAbsent(seq / k, b -> new Block(payloadSize));
+        long bit = 1L << (seq % k);
+        if ((block.receivedMask & bit) != 0 || block.done) return;   // Duplicado
+
+        block.receivedMask |= bit;
+        block.received++;
+        block.lengthXor ^= length;
+        xor(block.accumulator, data, offset, length);
+        tryRecover(seq / k, block, sink);
+    }
+
+    // 'packet' posicionado al inicio del paquete de paridad completo
+    public void onParity(ByteBuffer packet, int packetLength, RecoveredSink sink) throws IOException {
+        if (packetLength < Protocol.PARITY_HEADER || packetLength - Protocol.PARITY_HEADER > payloadSize) return;
+        int first = packet.getInt(4);
+        int count = packet.getInt(8);
+        int lengthXor = packet.getInt(12);
+        int blockIndex = first / k;
+        if (first % k != 0 || count < 1 || count > k || blockIndex < releasedBelow) return;   // Otro K o bloque viejo
+
+        Block block = blocks.computeIfAbsent(blockIndex, b -> new Block(payloadSize));
+        if (block.hasParity || block.done) return;
+        block.hasParity = true;
+        block.count = count;
+        block.lengthXor ^= lengthXor;
+        block.missingAtParity = count - block.received;
+        byte[] bytes = packet.array();
+        xor(block.accumulator, bytes, packet.arrayOffset() + Protocol.PARITY_HEADER, packetLength - Protocol.PARITY_HEADER);
+        tryRecover(blockIndex, block, sink);
+    }
+
+    private void tryRecover(int blockIndex, Block block, RecoveredSink sink) throws IOException {
+        if (!block.hasParity || block.done) return;
+        if (block.received == block.count) {
+            block.done = true;   // Nada que reconstruir
+            return;
+        }
+        if (block.received != block.count - 1) return;
+
+        for(int i = 0; i < block.count; i++) {
+            if ((block.receivedMask & (1L << i)) == 0) {
+                block.done = true;
+                block.recoveredOne = true;
+                recovered++;
+                sink.accept(blockIndex * k + i, block.accumulator, block.lengthXor);
+                return;
+            }
+        }
+    }
+
+    // Libera los bloques ya entregados por completo (todos sus seq < expected)
+    public void release(int expected) {
+        releasedBelow = Math.max(releasedBelow, expected / k);
+        Iterator<Map.Entry<Integer, Block>> it = blocks.entrySet().iterator();
+        while(it.hasNext()) {
+            Map.Entry<Integer, Block> entry = it.next();
+            if ((entry.getKey() + 1) * k > expected) continue;
+            Block block = entry.getValue();
+            if (block.hasParity && block.missingAtParity > 1) {
+                // Faltaba más de uno al llegar la paridad: el resto tuvo que esperar retransmisiones
+                unrecoverable += block.missingAtParity - (block.recoveredOne ? 1 : 0);
+            }
+            it.remove();
+        }
+    }
+
+    private static void xor(byte[] accumulator, byte[] data, int offset, int length) {
+        for(int i = 0; i < length; i++) {
+            accumulator[i] ^= data[offset + i];
+        }
+    }
+
+    public int getRecovered() {
+        return recovered;
+    }
+
+    public int getUnrecoverable() {
+        return unrecoverable;
+    }
+
+    private static final class Block {
+        final byte[] accumulator;
+        long receivedMask = 0;
+        int received = 0;
+        int count;
+        int lengthXor = 0;
+        int missingAtParity = 0;
+        boolean hasParity = false;
+        boolean done = false;
+        boolean recoveredOne = false;
+
+        Block(int payloadSize) {
+            this.accumulator = new byte[payloadSize];
+        }
+    }
+}
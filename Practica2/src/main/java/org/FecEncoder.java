@@ -0,0 +1,77 @@
+package org;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32C;
+
+// FEC por XOR del lado del emisor: por cada bloque de K paquetes de datos se envía un paquete
+// de paridad con el XOR de sus payloads. El receptor reconstruye cualquier paquete perdido del
+// bloque sin esperar una retransmisión (si se pierde uno solo). Sobrecarga: 1/K.
+//   Paridad: [int PARITY][int primer seq][int cantidad][int XOR de longitudes][int CRC32C][XOR de payloads]
+public class FecEncoder {
+    public static final int MAX_K = 64;   // El receptor lleva los recibidos de cada bloque en un long
+
+    private final int k;
+    private final ByteBuffer header = ByteBuffer.allocateDirect(Protocol.PARITY_HEADER);
+    private final ByteBuffer parity;
+    private final CRC32C crc = new CRC32C();
+    private int paritySent = 0;
+
+    public FecEncoder(int k, int payloadSize) {
+        if (k < 2 || k > MAX_K) throw new IllegalArgumentException("FEC block size must be 2.." + MAX_K + ": " + k);
+        this.k = k;
+        this.parity = ByteBuffer.allocateDirect(payloadSize);
+    }
+
+    public int blockSize() {
+        return k;
+    }
+
+    // El paquete seq cierra un bloque (o es el último de la canción)
+    public boolean isBlockEnd(int seq, int totalPackets) {
+        return seq % k == k - 1 || seq == totalPackets - 1;
+    }
+
+    // Calcula y envía la paridad del bloque que termina en lastSeq; devuelve el tamaño del datagrama
+    public int sendParity(int lastSeq, MappedSong song, Session.Transport transport) throws IOException {
+        int first = lastSeq - lastSeq % k;
+        int count = lastSeq - first + 1;
+        int lengthXor = 0;
+        int longest = 0;
+
+        parity.clear();
+        while(parity.hasRemaining()) parity.put((byte)0);
+
+        for(int seq = first; seq <= lastSeq; seq++) {
+            ByteBuffer payload = song.payload(seq);
+            int len = payload.remaining();
+            lengthXor ^= len;
+            longest = Math.max(longest, len);
+            xorInto(parity, payload, len);
+        }
+
+        ByteBuffer payload = parity.slice(0, longest);
+        crc.reset();
+        crc.update(payload.duplicate());
+        header.clear();
+        header.putInt(Protocol.PARITY).putInt(first).putInt(count).putInt(lengthXor).putInt((int)crc.getValue()).flip();
+        transport.send(header, payload);
+        paritySent++;
+        return Protocol.PARITY_HEADER + longest;
+    }
+
+    // parity[0..len) ^= data[0..len), de a 8 bytes mientras se pueda
+    static void xorInto(ByteBuffer parity, ByteBuffer data, int len) {
+        int i = 0;
+        for(; i + 8 <= len; i += 8) {
+            parity.putLong(i, parity.getLong(i) ^ data.getLong(i));
+        }
+        for(; i < len; i++) {
+            parity.put(i, (byte)(parity.get(i) ^ data.get(i)));
+        }
+    }
+
+    public int getParitySent() {
+        return paritySent;
+    }
+}
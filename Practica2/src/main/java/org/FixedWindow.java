@@ -0,0 +1,29 @@
+package org;
+
+// Ventana fija (comportamiento original con K constante)
+public class FixedWindow implements CongestionControl {
+    private final int window;
+
+    public FixedWindow(int window) {
+        this.window = window;
+    }
+
+    @Override
+    public int window() {
+        return window;
+    }
+
+    @Override
+    public void onAck(int newlyAcked) { }
+
+    @Override
+    public void onLoss() { }
+
+    @Override
+    public void onTimeout() { }
+
+    @Override
+    public String toString() {
+        return "fixed(" + window + ")";
+    }
+}
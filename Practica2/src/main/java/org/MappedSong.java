@@ -0,0 +1,174 @@
+package org;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.CRC32C;
+import javazoom.jl.decoder.Bitstream;
+import javazoom.jl.decoder.BitstreamException;
+import javazoom.jl.decoder.Header;
+
+// Canción mapeada en memoria y dividida lógicamente en paquetes de 'payloadSize' bytes.
+// No se copia nada al heap: cada payload es un slice de la región mapeada, así que el
+// uso de memoria no depende del tamaño del archivo.
+// view() da la misma canción con otro tamaño de payload sobre el mismo mapeo: solo cambia el corte
+// en paquetes, y lo que depende del archivo entero (bitrate, fileId, SHA-256) lo calcula el dueño.
+public class MappedSong implements Closeable {
+    private final MappedSong owner;   // null = este objeto es el dueño del mapeo
+    private final FileChannel file;
+    private final MappedByteBuffer map;
+    private final int payloadSize;
+    private final int packetCount;
+    private int bitrate = -1;   // bits/s del audio, se calcula al pedirlo
+    private Integer fileId;     // CRC32C del contenido, se calcula al pedirlo
+    private int[] packetCrcs;   // CRC32C de cada payload: se comparte entre sesiones y retransmisiones
+    private byte[] sha256;
+
+    public MappedSong(Path path, int payloadSize) throws IOException {
+        this.file = FileChannel.open(path, StandardOpenOption.READ);
+        long size = file.size();
+        if (size > Integer.MAX_VALUE) {
+            file.close();
+            throw new IOException("File too large to map: " + path + " (" + size + " bytes)");
+        }
+        this.owner = null;
+        this.map = file.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        this.payloadSize = payloadSize;
+        this.packetCount = (int)((size + payloadSize - 1) / payloadSize);
+    }
+
+    private MappedSong(MappedSong owner, int payloadSize) {
+        this.owner = owner;
+        this.file = owner.file;
+        this.map = owner.map;
+        this.payloadSize = payloadSize;
+        this.packetCount = (int)((map.capacity() + (long)payloadSize - 1) / payloadSize);
+    }
+
+    // La canción cortada en paquetes de otro tamaño, sin volver a mapear el archivo
+    public MappedSong view(int payloadSize) {
+        MappedSong root = owner != null ? owner : this;
+        return payloadSize == root.payloadSize ? root : new MappedSong(root, payloadSize);
+    }
+
+    public int packetCount() {
+        return packetCount;
+    }
+
+    public long size() {
+        return map.capacity();
+    }
+
+    public int payloadSize() {
+        return payloadSize;
+    }
+
+    // Trae las páginas del archivo a memoria física
+    public void load() {
+        map.load();
+    }
+
+    // Bitrate del MP3 según la cabecera del primer frame (promedio si tiene cabecera VBR Xing),
+    // o 0 si no se reconoce el formato
+    public synchronized int bitrate() {
+        if (owner != null) return owner.bitrate();
+        if (bitrate >= 0) return bitrate;
+        bitrate = 0;
+        Bitstream bitstream = new Bitstream(new MappedInputStream(map.duplicate().rewind()));
+        try {
+            Header header = bitstream.readFrame();
+            if (header != null) bitrate = header.bitrate();
+        } catch (BitstreamException e) {
+            // No es un MP3 válido: sin bitrate
+        } finally {
+            try {
+                bitstream.close();
+            } catch (BitstreamException e) {
+                // Nada que liberar: el mapeo sigue abierto
+            }
+        }
+        return bitrate;
+    }
+
+    // Identifica el contenido del archivo: una descarga reanudada solo sigue si no cambió
+    public synchronized int fileId() {
+        if (owner != null) return owner.fileId();
+        if (fileId == null) {
+            CRC32C crc = new CRC32C();
+            crc.update(map.duplicate().rewind());
+            fileId = (int)crc.getValue();
+        }
+        return fileId;
+    }
+
+    public synchronized int packetCrc(int seq) {
+        if (packetCrcs == null) {
+            packetCrcs = new int[packetCount];
+            CRC32C crc = new CRC32C();
+            for(int i = 0; i < packetCount; i++) {
+                crc.reset();
+                crc.update(payload(i));
+                packetCrcs[i] = (int)crc.getValue();
+            }
+        }
+        return packetCrcs[seq];
+    }
+
+    // SHA-256 del archivo completo, para la verificación extremo a extremo en el FIN
+    public synchronized ByteBuffer sha256() {
+        if (owner != null) return owner.sha256();
+        if (sha256 == null) {
+            try {
+                MessageDigest digest = MessageDigest.getInstance("SHA-256");
+                digest.update(map.duplicate().rewind());
+                sha256 = digest.digest();
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256 not available", e);
+            }
+        }
+        return ByteBuffer.wrap(sha256).asReadOnlyBuffer();
+    }
+
+    // Vista de solo lectura sobre los bytes del paquete seq (sin copia)
+    public ByteBuffer payload(int seq) {
+        int start = seq * payloadSize;
+        int len = Math.min(payloadSize, map.capacity() - start);
+        return map.slice(start, len);
+    }
+
+    // Una vista no cierra nada: el mapeo es del dueño
+    @Override
+    public void close() throws IOException {
+        if (owner == null) file.close();
+    }
+
+    // Lectura secuencial del mapeo para el parser de cabeceras MP3
+    private static final class MappedInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        MappedInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) return 0;
+            if (!buffer.hasRemaining()) return -1;
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+    }
+}
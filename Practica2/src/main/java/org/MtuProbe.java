@@ -0,0 +1,89 @@
+package org;
+
+import java.io.IOException;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+
+// Búsqueda del datagrama más grande que llega al receptor (PMTU a nivel de aplicación, estilo RFC 8899).
+// Se envían sondas de tamaños candidatos y el receptor confirma cada una con PROBE_ACK; la más grande
+// confirmada gana. Java no permite fijar el bit DF, así que los candidatos se acotan a la MTU de la
+// interfaz local por donde sale el tráfico: así el emisor nunca fragmenta, y una sonda perdida indica
+// que el camino no la soporta.
+public class MtuProbe {
+    // Tamaños de datagrama UDP (sin cabeceras IP/UDP): jumbo 9000, Ethernet 1500, PPPoE, túneles, IPv6 mínimo...
+    private static final int[] CANDIDATES = { 8972, 4068, 1472, 1452, 1400, 1232, 1028, 548 };
+    private static final int IP_UDP_OVERHEAD = 28;
+    private static final long ROUND_TIME = 100_000_000L;   // Nanoseconds por ronda
+    private static final int ROUNDS = 3;
+
+    private final int[] sizes;
+    private final boolean[] confirmed;
+    private final ByteBuffer header = ByteBuffer.allocateDirect(8);
+    private final ByteBuffer padding;
+    private int round = 0;
+    private long roundStart;
+    private int best = -1;
+
+    public MtuProbe(int maxDatagram) {
+        int count = 0;
+        for (int size : CANDIDATES) if (size <= maxDatagram) count++;
+        sizes = new int[count];
+        int i = 0;
+        for (int size : CANDIDATES) if (size <= maxDatagram) sizes[i++] = size;
+        confirmed = new boolean[count];
+        padding = ByteBuffer.allocateDirect(Math.max(0, maxDatagram - 8));
+    }
+
+    // Envía una ronda de sondas cuando toca. Solo se reenvían las mayores que la mejor confirmada.
+    public void pump(Session.Transport transport, long now) throws IOException {
+        if (isDone(now) || (round > 0 && now - roundStart < ROUND_TIME)) return;
+
+        for(int i = 0; i < sizes.length; i++) {
+            if (confirmed[i] || sizes[i] <= best) continue;
+            header.clear();
+            header.putInt(Protocol.PROBE).putInt(sizes[i]).flip();
+            transport.send(header, padding.slice(0, sizes[i] - 8));
+        }
+        round++;
+        roundStart = now;
+    }
+
+    public void onProbeAck(int size) {
+        for(int i = 0; i < sizes.length; i++) {
+            if (sizes[i] == size) confirmed[i] = true;
+        }
+        best = Math.max(best, size);
+    }
+
+    public boolean isDone(long now) {
+        if (sizes.length == 0) return true;
+        if (best == sizes[0]) return true;   // El candidato más grande pasó: no hay nada mejor
+        return round >= ROUNDS && now - roundStart >= ROUND_TIME;
+    }
+
+    public long nextTimeout(long now) {
+        return roundStart + ROUND_TIME - now;
+    }
+
+    // Datagrama más grande confirmado, o -1 si no pasó ninguna sonda
+    public int result() {
+        return best;
+    }
+
+    // Datagrama UDP más grande que la interfaz local hacia 'peer' envía sin fragmentar
+    public static int localLimit(InetSocketAddress peer) {
+        try (DatagramSocket probe = new DatagramSocket()) {
+            probe.connect(peer);
+            InetAddress local = probe.getLocalAddress();
+            NetworkInterface nic = NetworkInterface.getByInetAddress(local);
+            if (nic != null && nic.getMTU() > 0) return nic.getMTU() - IP_UDP_OVERHEAD;
+        } catch (SocketException e) {
+            // Sin información de la interfaz: se usa el tope del protocolo
+        }
+        return CANDIDATES[0];
+    }
+}
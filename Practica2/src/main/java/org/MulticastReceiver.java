@@ -0,0 +1,243 @@
+package org;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.DatagramPacket;
+import java.net.InetSocketAddress;
+import java.net.MulticastSocket;
+import java.net.NetworkInterface;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Random;
+import java.util.zip.CRC32C;
+
+// Receptor multicast con reparación por NACKs (estilo SRM/NORM).
+// Los paquetes se escriben en su posición del archivo en cuanto llegan, así que el orden no importa.
+// Un hueco no se pide enseguida: se espera un tiempo aleatorio en [0, NACK_BACKOFF) y, si mientras
+// tanto otro receptor pidió lo mismo (los NACKs van al grupo), el propio se posterga REPAIR_WAIT.
+// Con muchos receptores que pierden el mismo paquete el emisor recibe uno o pocos NACKs.
+public class MulticastReceiver {
+    public enum Outcome { READY, INCOMPLETE, CORRUPT }
+
+    private static final long NACK_BACKOFF = 20_000_000L;   // Nanoseconds
+    private static final long REPAIR_WAIT = 100_000_000L;   // Nanoseconds hasta volver a pedir un paquete
+    private static final int IDLE_TIMEOUT = 5000;           // Milliseconds sin datagramas
+    private static final int NACKS_PER_ROUND = 4;           // Datagramas NACK por revisión de huecos
+
+    private final MulticastSocket socket;
+    private final InetSocketAddress group;
+    private final ReceiveQueue queue;
+    private final int id = new Random().nextInt();
+    private final Random random = new Random();
+
+    private int payload = -1;          // Se conoce con el primer START
+    private int total = -1;
+    private byte[] expectedHash;
+    private BitSet received;
+    private BitSet missing;            // Huecos con un NACK programado
+    private long[] nackDue;
+    private long nextDue = Long.MAX_VALUE;
+    private int receivedCount = 0;
+    private int frontier = 0;          // Todo lo anterior ya llegó o está en 'missing'
+
+    private long duplicates = 0;
+    private long corrupt = 0;
+    private long nackPackets = 0;
+    private long nackedSeqs = 0;
+    private long suppressed = 0;
+
+    private final ByteBuffer nack = ByteBuffer.allocate(4 * (3 + Protocol.NACK_MAX));
+    private final int[] due = new int[Protocol.NACK_MAX];
+
+    public MulticastReceiver(InetSocketAddress group, NetworkInterface nif, int rcvbuf, int queueSlots) throws IOException {
+        this.group = group;
+        socket = new MulticastSocket(group.getPort());
+        socket.setReceiveBufferSize(rcvbuf);
+        socket.setNetworkInterface(nif);
+        socket.joinGroup(group, nif);
+        queue = new ReceiveQueue(socket, queueSlots, Protocol.DATA_HEADER + Protocol.MAX_PAYLOAD);
+    }
+
+    public Outcome receive(File file) throws Exception {
+        queue.start();
+        System.out.println("Joined multicast group " + group + " (SO_RCVBUF " + socket.getReceiveBufferSize() + " bytes)...");
+        CRC32C crc = new CRC32C();
+        boolean finReceived = false;
+        long lastPacketAt = System.nanoTime();
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            FileChannel out = raf.getChannel();
+            out.truncate(0);
+
+            while(!(finReceived && total >= 0 && receivedCount == total)) {
+                long now = System.nanoTime();
+                if (now >= nextDue) sendNacks(now);
+
+                long wait = nextDue == Long.MAX_VALUE ? IDLE_TIMEOUT : Math.max(1, (nextDue - now + 999_999) / 1_000_000);
+                ReceiveQueue.Slot slot = queue.poll(Math.min(wait, IDLE_TIMEOUT));
+                if (slot == null) {
+                    if (System.nanoTime() - lastPacketAt >= IDLE_TIMEOUT * 1_000_000L) {
+                        System.out.println("Timeout: no datagrams from the group for " + IDLE_TIMEOUT + " ms");
+                        break;
+                    }
+                    continue;
+                }
+
+                try {
+                    DatagramPacket packet = slot.packet();
+                    ByteBuffer buffer = slot.buffer();
+                    int length = packet.getLength();
+                    if (length < 4) continue;
+                    int seq = buffer.getInt(0);
+                    now = System.nanoTime();
+
+                    if (seq == Protocol.NACK) {
+                        // Los propios también vuelven por loopback: no cuentan como actividad del emisor
+                        if (length >= 12 && buffer.getInt(4) != id) overhear(buffer, length, now);
+                        continue;
+                    }
+                    lastPacketAt = now;
+                    if (seq == Protocol.START) {
+                        if (length >= 20 && payload < 0) start(buffer.getInt(4), buffer.getInt(16), now);
+                        continue;
+                    }
+                    if (seq == Protocol.FIN) {
+                        if (length >= 4 + Protocol.HASH_LENGTH + 4) {
+                            if (!finReceived) System.out.println("Fin de transmisión recibido.");
+                            finReceived = true;
+                            expectedHash = Arrays.copyOfRange(slot.data(), 4, 4 + Protocol.HASH_LENGTH);
+                            // Lo que falte al final también es un hueco
+                            if (payload > 0) markMissing(total, now);
+                        }
+                        continue;
+                    }
+                    if (seq < 0 || payload < 0 || seq >= total) continue;   // Sin START todavía: se pedirá después
+
+                    int dataLength = length - Protocol.DATA_HEADER;
+                    if (dataLength < 0 || dataLength > payload) continue;
+                    crc.reset();
+                    crc.update(slot.data(), Protocol.DATA_HEADER, dataLength);
+                    if ((int)crc.getValue() != buffer.getInt(4)) {
+                        corrupt++;
+                        continue;
+                    }
+                    if (received.get(seq)) {
+                        duplicates++;
+                        continue;
+                    }
+                    out.write(ByteBuffer.wrap(slot.data(), Protocol.DATA_HEADER, dataLength), (long)seq * payload);
+                    received.set(seq);
+                    missing.clear(seq);
+                    receivedCount++;
+                    markMissing(seq, now);
+                    frontier = Math.max(frontier, seq + 1);
+                    if (receivedCount % 500 == 0) System.out.println("Received: " + receivedCount + "/" + total);
+                } finally {
+                    queue.release(slot);
+                }
+            }
+        } finally {
+            socket.close();
+        }
+
+        System.out.println(this);
+        System.out.println(queue);
+        if (!finReceived || total < 0 || receivedCount < total) {
+            System.out.println("Transfer incomplete: " + receivedCount + "/" + Math.max(total, 0) + " packets");
+            return Outcome.INCOMPLETE;
+        }
+        byte[] actual = sha256(file);
+        if (!MessageDigest.isEqual(expectedHash, actual)) {
+            System.out.println("SHA-256 mismatch");
+            return Outcome.CORRUPT;
+        }
+        System.out.println("SHA-256 verified");
+        return Outcome.READY;
+    }
+
+    private void start(int payload, int total, long now) {
+        if (payload <= 0 || total < 0) return;
+        this.payload = payload;
+        this.total = total;
+        received = new BitSet(total);
+        missing = new BitSet(total);
+        nackDue = new long[total];
+        queue.setSlotSize(Protocol.DATA_HEADER + payload);
+        System.out.println("Multicast stream: payload " + payload + " bytes, " + total + " packets");
+    }
+
+    // Todo lo que está entre la frontera y 'upTo' y no llegó queda programado para un NACK
+    private void markMissing(int upTo, long now) {
+        for(int seq = frontier; seq < upTo; seq++) {
+            if (received.get(seq) || missing.get(seq)) continue;
+            missing.set(seq);
+            nackDue[seq] = now + (long)(random.nextDouble() * NACK_BACKOFF);
+            nextDue = Math.min(nextDue, nackDue[seq]);
+        }
+        frontier = Math.max(frontier, upTo);
+    }
+
+    // Otro receptor pidió estos paquetes: si también faltan acá, se espera su reparación
+    private void overhear(ByteBuffer buffer, int length, long now) {
+        if (missing == null) return;
+        int count = Math.min(buffer.getInt(8), (length - 12) / 4);
+        for(int i = 0; i < count; i++) {
+            int seq = buffer.getInt(12 + 4 * i);
+            if (seq < 0 || seq >= total || !missing.get(seq)) continue;
+            if (nackDue[seq] < now + REPAIR_WAIT) {
+                nackDue[seq] = now + REPAIR_WAIT;
+                suppressed++;
+            }
+        }
+    }
+
+    private void sendNacks(long now) throws IOException {
+        long next = Long.MAX_VALUE;
+        int count = 0;
+        int rounds = 0;
+        for(int seq = missing.nextSetBit(0); seq >= 0; seq = missing.nextSetBit(seq + 1)) {
+            if (nackDue[seq] > now || rounds >= NACKS_PER_ROUND) {
+                next = Math.min(next, nackDue[seq]);
+                continue;
+            }
+            due[count++] = seq;
+            nackDue[seq] = now + REPAIR_WAIT;   // Si la reparación no llega, se vuelve a pedir
+            next = Math.min(next, nackDue[seq]);
+            if (count == Protocol.NACK_MAX) {
+                flushNack(count);
+                count = 0;
+                rounds++;
+            }
+        }
+        if (count > 0) flushNack(count);
+        nextDue = next;
+    }
+
+    private void flushNack(int count) throws IOException {
+        Protocol.encodeNack(nack, id, due, count);
+        socket.send(new DatagramPacket(nack.array(), nack.limit(), group));
+        nackPackets++;
+        nackedSeqs += count;
+    }
+
+    private static byte[] sha256(File file) throws Exception {
+        MessageDigest sha = MessageDigest.getInstance("SHA-256");
+        byte[] buffer = new byte[64 * 1024];
+        try (FileInputStream in = new FileInputStream(file)) {
+            int n;
+            while((n = in.read(buffer)) > 0) sha.update(buffer, 0, n);
+        }
+        return sha.digest();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Multicast receiver: %d/%d packets, %d duplicates, %d corrupt, %d NACKs sent (%d seqs), %d suppressed",
+                receivedCount, Math.max(total, 0), duplicates, corrupt, nackPackets, nackedSeqs, suppressed);
+    }
+}
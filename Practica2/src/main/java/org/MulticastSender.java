@@ -0,0 +1,215 @@
+package org;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+// Emisor multicast: cada paquete sale una sola vez hacia el grupo, al ritmo del Pacer, sin importar
+// cuántos receptores haya. No hay ACKs: los receptores piden lo que les falta con NACKs al grupo y
+// la reparación también va al grupo, así sirve a todos los que perdieron ese paquete.
+// Supresión del lado del emisor: un NACK por un paquete reparado hace menos de REPAIR_HOLDOFF no
+// genera otra copia (la reparación todavía puede estar en camino).
+public class MulticastSender {
+    private static final long REPAIR_HOLDOFF = 30_000_000L;       // Nanoseconds
+    private static final long FIN_INTERVAL = 250_000_000L;        // Nanoseconds entre FINs al terminar
+    private static final long ANNOUNCE_INTERVAL = 1_000_000_000L; // Nanoseconds entre STARTs (receptores que llegan tarde)
+    private static final long LINGER = 3_000_000_000L;            // Nanoseconds sin NACKs para cerrar
+    private static final long REPORT_INTERVAL = 1_000_000_000L;
+    private static final long DEFAULT_RATE = 8_000_000L;          // Bits/s si no se pidió --rate ni --audio-rate
+
+    private final DatagramChannel channel;
+    private final Selector selector;
+    private final InetSocketAddress group;
+    private final MappedSong song;
+    private final String name;
+    private final Pacer pacer;
+    private final TransferStats stats;
+
+    private final ByteBuffer out;
+    private final ByteBuffer in = ByteBuffer.allocateDirect(4 * (3 + Protocol.NACK_MAX));
+    private final BitSet repairs = new BitSet();   // Paquetes pedidos pendientes de reenviar
+    private final long[] repairedAt;                // Último reenvío de cada paquete
+    private int nextSeq = 0;
+    private long nacks = 0;
+    private long suppressed = 0;
+
+    public MulticastSender(InetSocketAddress group, NetworkInterface nif, MappedSong song, String name, Pacer pacer, long now) throws IOException {
+        this.group = group;
+        this.song = song;
+        this.name = name;
+        this.pacer = pacer;
+        this.stats = new TransferStats(now);
+        this.out = ByteBuffer.allocateDirect(Protocol.DATA_HEADER + song.payloadSize());
+        this.repairedAt = new long[song.packetCount()];
+
+        // Unido al grupo en su puerto para escuchar los NACKs (y descartar sus propios datos)
+        channel = DatagramChannel.open(StandardProtocolFamily.INET);
+        channel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+        channel.bind(new InetSocketAddress(group.getPort()));
+        channel.setOption(StandardSocketOptions.IP_MULTICAST_IF, nif);
+        channel.setOption(StandardSocketOptions.IP_MULTICAST_LOOP, true);   // Receptores en la misma máquina
+        channel.join(group.getAddress(), nif);
+        channel.configureBlocking(false);
+        selector = Selector.open();
+        channel.register(selector, SelectionKey.OP_READ);
+    }
+
+    public void run(boolean statsLines) throws IOException {
+        int total = song.packetCount();
+        long now = System.nanoTime();
+        long startedAt = now;
+        long finishedAt = -1;
+        long lastFinAt = 0;
+        long lastAnnounce = now;
+        long lastNackAt = now;
+        long lastReport = now;
+        announce();
+
+        while(true) {
+            now = System.nanoTime();
+
+            // 1. Reparaciones primero y después datos nuevos, ambos al ritmo del pacer
+            while(pacer.isReady(now)) {
+                int seq = repairs.nextSetBit(0);
+                if (seq >= 0) {
+                    repairs.clear(seq);
+                    sendData(seq);
+                    repairedAt[seq] = now;
+                    stats.onRetransmit(1);
+                } else if (nextSeq < total) {
+                    sendData(nextSeq++);
+                } else {
+                    break;
+                }
+            }
+
+            // 2. Todo enviado: FIN periódico hasta que nadie pida nada durante LINGER
+            if (nextSeq >= total) {
+                if (finishedAt < 0) {
+                    finishedAt = now;
+                    stats.setAckedBytes(song.size());
+                    double seconds = Math.max(1e-9, (now - startedAt) / 1e9);
+                    System.out.printf("Multicast '%s' sent: %d bytes in %.2f s (%.1f KB/s) to %s%n",
+                            name, song.size(), seconds, song.size() / 1024.0 / seconds, group);
+                }
+                if (now - lastFinAt >= FIN_INTERVAL) {
+                    sendFin();
+                    lastFinAt = now;
+                }
+                if (repairs.isEmpty() && now - lastNackAt >= LINGER && now - finishedAt >= LINGER) break;
+            }
+            if (now - lastAnnounce >= ANNOUNCE_INTERVAL) {
+                announce();
+                lastAnnounce = now;
+            }
+            if (now - lastReport >= REPORT_INTERVAL) {
+                System.out.println(report());
+                if (statsLines) System.out.println("CMD:STATS:" + stats.toJson(group.toString(), name, song.size(), now));
+                lastReport = now;
+            }
+
+            // 3. Esperar NACKs hasta el próximo envío posible o el próximo FIN/anuncio
+            long wait = Math.min(lastAnnounce + ANNOUNCE_INTERVAL, lastReport + REPORT_INTERVAL) - now;
+            if (nextSeq < total || !repairs.isEmpty()) wait = Math.min(wait, pacer.delay(now));
+            if (nextSeq >= total) wait = Math.min(wait, lastFinAt + FIN_INTERVAL - now);
+            long waitMillis = TimeUnit.NANOSECONDS.toMillis(Math.max(0, wait) + 999_999);
+            if (selector.select(Math.max(1, waitMillis)) > 0) {
+                selector.selectedKeys().clear();
+                if (receiveNacks(System.nanoTime())) lastNackAt = System.nanoTime();
+            }
+        }
+
+        System.out.println(report());
+        // Con la hora actual: los reportes del LINGER ya pasaron de finishedAt y elapsed no puede retroceder
+        if (statsLines) System.out.println("CMD:STATS:" + stats.toJson(group.toString(), name, song.size(), System.nanoTime()));
+        System.out.println("Multicast transfer completed!");
+        selector.close();
+        channel.close();
+    }
+
+    // Devuelve true si llegó al menos un NACK
+    private boolean receiveNacks(long now) throws IOException {
+        boolean any = false;
+        while(true) {
+            in.clear();
+            if (channel.receive(in) == null) break;
+            in.flip();
+            // Lo propio vuelve por loopback: solo interesan los NACKs completos
+            if (in.remaining() < 12 || in.getInt(0) != Protocol.NACK) continue;
+            int count = Math.min(in.getInt(8), (in.remaining() - 12) / 4);
+            any = true;
+            nacks++;
+            for(int i = 0; i < count; i++) {
+                int seq = in.getInt(12 + 4 * i);
+                if (seq < 0 || seq >= nextSeq) continue;   // Todavía no enviado: llegará solo
+                if (repairs.get(seq) || (repairedAt[seq] != 0 && now - repairedAt[seq] < REPAIR_HOLDOFF)) {
+                    suppressed++;
+                    continue;
+                }
+                repairs.set(seq);
+            }
+        }
+        return any;
+    }
+
+    private void sendData(int seq) throws IOException {
+        ByteBuffer payload = song.payload(seq);
+        out.clear();
+        out.putInt(seq).putInt(song.packetCrc(seq)).put(payload).flip();
+        int bytes = out.remaining();
+        channel.send(out, group);
+        pacer.consume(bytes);
+        stats.onSent(bytes);
+    }
+
+    private void announce() throws IOException {
+        channel.send(Protocol.encodeAnnounce(song.payloadSize(), song.fileId(), song.packetCount()), group);
+    }
+
+    private void sendFin() throws IOException {
+        ByteBuffer fin = ByteBuffer.allocate(4 + Protocol.HASH_LENGTH + 4);
+        fin.putInt(Protocol.FIN).put(song.sha256()).putInt(song.packetCount()).flip();
+        channel.send(fin, group);
+    }
+
+    public String report() {
+        return String.format("Multicast '%s': %d/%d packets sent, %d repairs for %d NACKs (%d suppressed), %s",
+                name, nextSeq, song.packetCount(), stats.getRetransmitted(), nacks, suppressed, pacer);
+    }
+
+    // Pacer de --rate / --audio-rate; sin ellos, DEFAULT_RATE (multicast no tiene control de congestión)
+    static Pacer newPacer(Options opts, MappedSong song, long now) {
+        Pacer pacer = Server.newPacer(opts, song, now);
+        if (pacer != null) return pacer;
+        long bytesPerSecond = DEFAULT_RATE / 8;
+        return new Pacer(bytesPerSecond, 4L * (Protocol.DATA_HEADER + song.payloadSize()), now);
+    }
+
+    // --interface=nombre, o la primera interfaz activa con multicast; si no hay ninguna, loopback
+    static NetworkInterface multicastInterface(Options opts) throws IOException {
+        if (opts.has("interface")) {
+            NetworkInterface nif = NetworkInterface.getByName(opts.get("interface", ""));
+            if (nif == null) throw new IOException("Unknown network interface: " + opts.get("interface", ""));
+            return nif;
+        }
+        NetworkInterface loopback = null;
+        for (NetworkInterface nif : Collections.list(NetworkInterface.getNetworkInterfaces())) {
+            if (!nif.isUp()) continue;
+            if (nif.isLoopback()) {
+                loopback = nif;
+            } else if (nif.supportsMulticast() && nif.getInetAddresses().hasMoreElements()) {
+                return nif;
+            }
+        }
+        return loopback;
+    }
+}
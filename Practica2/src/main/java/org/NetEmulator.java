@@ -0,0 +1,266 @@
+package org;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+
+// Proxy UDP que emula una red con pérdidas entre Server y ClientSound (localhost nunca pierde).
+// Escucha en un puerto "público" y reenvía al destino desde un socket propio; lo que responde
+// el destino vuelve al último que habló con el puerto público. Sirve para los dos modos:
+//   push:      Server --client=localhost:<listen>   ->  emulador  ->  ClientSound --port=<target>
+//   solicitud: ClientSound --server=localhost:<listen>  ->  emulador  ->  StreamServer
+// Cada sentido es un enlace independiente con pérdida, duplicación, retardo + jitter,
+// reordenamiento y ancho de banda limitado (cola FIFO de tamaño acotado, drop-tail).
+public class NetEmulator implements Closeable {
+    private static final int MAX_DATAGRAM = 65507;
+
+    // Parámetros de un enlace. Probabilidades en [0, 1], tiempos en milisegundos
+    public static class Impairments {
+        public double loss = 0;
+        public double duplicate = 0;
+        public double reorder = 0;       // Paquetes que se retrasan 'reorderDelay' extra y llegan fuera de orden
+        public double delay = 0;
+        public double jitter = 0;        // Retardo extra uniforme en [0, jitter), sin alterar el orden
+        public double reorderDelay = 10;
+        public long rateKbps = 0;        // 0 = sin límite
+        public int queueBytes = 256 * 1024;
+
+        public static Impairments from(Options opts) {
+            Impairments imp = new Impairments();
+            imp.loss = opts.getDouble("loss", 0);
+            imp.duplicate = opts.getDouble("duplicate", 0);
+            imp.reorder = opts.getDouble("reorder", 0);
+            imp.delay = opts.getDouble("delay", 0);
+            imp.jitter = opts.getDouble("jitter", 0);
+            imp.reorderDelay = opts.getDouble("reorder-delay", imp.reorderDelay);
+            imp.rateKbps = opts.getInt("bandwidth", 0);
+            imp.queueBytes = opts.getInt("queue-bytes", imp.queueBytes);
+            return imp;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("loss=%.1f%% dup=%.1f%% reorder=%.1f%% delay=%.0fms jitter=%.0fms bw=%s",
+                    loss * 100, duplicate * 100, reorder * 100, delay, jitter,
+                    rateKbps > 0 ? rateKbps + "kbit/s" : "unlimited");
+        }
+    }
+
+    private final DatagramSocket front;   // Puerto público
+    private final DatagramSocket back;    // Hacia el destino
+    private final InetSocketAddress target;
+    private final Link forward;           // front -> destino
+    private final Link backward;          // destino -> front
+    private final DelayQueue<Scheduled> pending = new DelayQueue<>();
+    private final Thread[] threads;
+    private volatile SocketAddress peer;  // Último que escribió al puerto público
+    private volatile boolean closed = false;
+
+    public NetEmulator(int listenPort, InetSocketAddress target, Impairments impairments, long seed) throws IOException {
+        this.front = new DatagramSocket(listenPort);
+        this.back = new DatagramSocket();
+        this.target = target;
+        Random random = new Random(seed);
+        this.forward = new Link("forward", impairments, random);
+        this.backward = new Link("backward", impairments, random);
+        this.threads = new Thread[] {
+            new Thread(() -> receiveLoop(front, forward), "emulator-front"),
+            new Thread(() -> receiveLoop(back, backward), "emulator-back"),
+            new Thread(this::deliverLoop, "emulator-deliver"),
+        };
+    }
+
+    public void start() {
+        for (Thread thread : threads) {
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    public int getListenPort() {
+        return front.getLocalPort();
+    }
+
+    public Link getForward() {
+        return forward;
+    }
+
+    public Link getBackward() {
+        return backward;
+    }
+
+    private void receiveLoop(DatagramSocket socket, Link link) {
+        DatagramPacket packet = new DatagramPacket(new byte[MAX_DATAGRAM], MAX_DATAGRAM);
+        try {
+            while(!closed) {
+                packet.setLength(MAX_DATAGRAM);
+                socket.receive(packet);
+                SocketAddress destination;
+                DatagramSocket out;
+                if (link == forward) {
+                    peer = packet.getSocketAddress();
+                    destination = target;
+                    out = back;
+                } else {
+                    destination = peer;
+                    out = front;
+                    if (destination == null) continue;   // Nadie habló todavía por el puerto público
+                }
+                byte[] data = Arrays.copyOf(packet.getData(), packet.getLength());
+                link.admit(data, out, destination, System.nanoTime(), pending);
+            }
+        } catch (IOException e) {
+            if (!closed) e.printStackTrace();
+        }
+    }
+
+    private void deliverLoop() {
+        try {
+            while(!closed) {
+                Scheduled item = pending.take();
+                try {
+                    item.socket.send(new DatagramPacket(item.data, item.data.length, item.destination));
+                } catch (IOException e) {
+                    // El extremo ya cerró: igual que una pérdida
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        front.close();
+        back.close();
+        threads[2].interrupt();
+    }
+
+    @Override
+    public String toString() {
+        return forward + "; " + backward;
+    }
+
+    // Un sentido del enlace: decide qué pasa con cada datagrama y cuándo sale
+    public static class Link {
+        private final String name;
+        private final Impairments imp;
+        private final Random random;
+        private long linkFreeAt = 0;   // Nanoseconds: fin de la transmisión del último datagrama en cola
+        private long lastDue = 0;      // Nanoseconds: entrega del último datagrama en orden
+
+        private long packets = 0;
+        private long dropped = 0;
+        private long queueDrops = 0;
+        private long duplicated = 0;
+        private long reordered = 0;
+
+        Link(String name, Impairments imp, Random random) {
+            this.name = name;
+            this.imp = imp;
+            this.random = random;
+        }
+
+        synchronized void admit(byte[] data, DatagramSocket out, SocketAddress destination, long now, DelayQueue<Scheduled> pending) {
+            packets++;
+            if (random.nextDouble() < imp.loss) {
+                dropped++;
+                return;
+            }
+            schedule(data, out, destination, now, pending);
+            if (random.nextDouble() < imp.duplicate) {
+                duplicated++;
+                schedule(data, out, destination, now, pending);
+            }
+        }
+
+        private void schedule(byte[] data, DatagramSocket out, SocketAddress destination, long now, DelayQueue<Scheduled> pending) {
+            // Ancho de banda: el datagrama espera a que el enlace termine de transmitir lo anterior
+            long departure = now;
+            if (imp.rateKbps > 0) {
+                long start = Math.max(now, linkFreeAt);
+                long backlogBytes = (start - now) * imp.rateKbps / 8 / 1_000_000;
+                if (backlogBytes > imp.queueBytes) {
+                    queueDrops++;
+                    return;
+                }
+                linkFreeAt = start + data.length * 8L * 1_000_000 / imp.rateKbps;
+                departure = linkFreeAt;
+            }
+            long due = departure + (long)((imp.delay + imp.jitter * random.nextDouble()) * 1_000_000);
+            if (random.nextDouble() < imp.reorder) {
+                // Solo estos llegan fuera de orden: los siguientes lo adelantan
+                reordered++;
+                due += (long)(imp.reorderDelay * 1_000_000);
+            } else {
+                // El jitter no desordena: un datagrama no sale antes que el anterior del mismo enlace
+                due = Math.max(due, lastDue);
+                lastDue = due;
+            }
+            pending.add(new Scheduled(data, out, destination, due));
+        }
+
+        public synchronized long getPackets() {
+            return packets;
+        }
+
+        public synchronized long getDropped() {
+            return dropped + queueDrops;
+        }
+
+        @Override
+        public synchronized String toString() {
+            return String.format("%s: %d packets, %d lost, %d queue drops, %d duplicated, %d reordered",
+                    name, packets, dropped, queueDrops, duplicated, reordered);
+        }
+    }
+
+    private static final class Scheduled implements Delayed {
+        final byte[] data;
+        final DatagramSocket socket;
+        final SocketAddress destination;
+        final long due;   // System.nanoTime()
+
+        Scheduled(byte[] data, DatagramSocket socket, SocketAddress destination, long due) {
+            this.data = data;
+            this.socket = socket;
+            this.destination = destination;
+            this.due = due;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(due - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(due, ((Scheduled)other).due);
+        }
+    }
+
+    // Uso: emulator.jar --listen=10000 --target=localhost:10002 [--loss=0.02] [--duplicate=0]
+    //                   [--reorder=0.01] [--reorder-delay=10] [--delay=5] [--jitter=2] (ms)
+    //                   [--bandwidth=kbit/s] [--queue-bytes=262144] [--seed=1]
+    public static void main(String[] args) throws Exception {
+        Options opts = Options.parse(args);
+        Impairments imp = Impairments.from(opts);
+        NetEmulator emulator = new NetEmulator(opts.getInt("listen", 10000),
+                Options.parseAddress(opts.get("target", "localhost:10002"), 10002), imp, opts.getInt("seed", 1));
+        emulator.start();
+        System.out.println("Emulating " + imp + " on port " + emulator.getListenPort() + " -> " + emulator.target);
+        while(true) {
+            Thread.sleep(1000);
+            System.out.println(emulator);
+        }
+    }
+}
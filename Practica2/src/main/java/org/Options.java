@@ -0,0 +1,74 @@
+package org;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Parser mínimo de argumentos de línea de comandos.
+// Acepta "--clave=valor", "--flag" (valor "true") y argumentos posicionales sueltos.
+public class Options {
+    private final Map<String, String> values = new HashMap<>();
+    private final List<String> positional = new ArrayList<>();
+
+    public static Options parse(String[] args) {
+        Options opts = new Options();
+        for (String arg : args) {
+            if (arg == null || arg.isEmpty()) continue;
+
+            if (arg.startsWith("--")) {
+                int eq = arg.indexOf('=');
+                if (eq > 0) {
+                    opts.values.put(arg.substring(2, eq), arg.substring(eq + 1));
+                } else {
+                    opts.values.put(arg.substring(2), "true");
+                }
+            } else {
+                opts.positional.add(arg);
+            }
+        }
+        return opts;
+    }
+
+    public String positional(int index, String def) {
+        return index < positional.size() ? positional.get(index) : def;
+    }
+
+    public boolean has(String key) {
+        return values.containsKey(key);
+    }
+
+    public String get(String key, String def) {
+        return values.getOrDefault(key, def);
+    }
+
+    public int getInt(String key, int def) {
+        String value = values.get(key);
+        if (value == null) return def;
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            System.err.println("Valor inválido para --" + key + ": " + value + " (usando " + def + ")");
+            return def;
+        }
+    }
+
+    public double getDouble(String key, double def) {
+        String value = values.get(key);
+        if (value == null) return def;
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            System.err.println("Valor inválido para --" + key + ": " + value + " (usando " + def + ")");
+            return def;
+        }
+    }
+
+    // "host:puerto" o solo "host" (puerto por defecto)
+    public static InetSocketAddress parseAddress(String value, int defaultPort) {
+        int colon = value.lastIndexOf(':');
+        if (colon < 0) return new InetSocketAddress(value, defaultPort);
+        return new InetSocketAddress(value.substring(0, colon), Integer.parseInt(value.substring(colon + 1)));
+    }
+}
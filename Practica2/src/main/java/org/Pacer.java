@@ -0,0 +1,58 @@
+package org;
+
+// Pacing del emisor con token bucket: reparte los envíos a 'rate' bytes/s en lugar de mandar
+// toda la ventana de golpe contra el buffer del receptor. La cubeta admite ráfagas de hasta
+// 'burst' bytes. Lo que no puede esperar (retransmisiones, paridad) se cobra igual y deja la
+// cubeta en deuda, así el promedio no pasa del objetivo. Los tiempos están en nanosegundos.
+public class Pacer {
+    private final long rate;     // Bytes por segundo
+    private final long burst;    // Bytes
+    private double tokens;
+    private long lastRefill;
+    private long sentBytes = 0;
+
+    public Pacer(long bytesPerSecond, long burstBytes, long now) {
+        if (bytesPerSecond <= 0) throw new IllegalArgumentException("Pacing rate must be positive: " + bytesPerSecond);
+        this.rate = bytesPerSecond;
+        this.burst = Math.max(1, burstBytes);
+        this.tokens = this.burst;
+        this.lastRefill = now;
+    }
+
+    // Puede salir un paquete nuevo
+    public boolean isReady(long now) {
+        refill(now);
+        return tokens > 0;
+    }
+
+    public void consume(int bytes) {
+        tokens -= bytes;
+        sentBytes += bytes;
+    }
+
+    // Nanosegundos hasta que vuelva a haber tokens
+    public long delay(long now) {
+        refill(now);
+        if (tokens > 0) return 0;
+        return (long)Math.ceil(-tokens * 1e9 / rate) + 1;
+    }
+
+    private void refill(long now) {
+        if (now <= lastRefill) return;
+        tokens = Math.min(burst, tokens + (now - lastRefill) * (double)rate / 1e9);
+        lastRefill = now;
+    }
+
+    public long getRate() {
+        return rate;
+    }
+
+    public long getSentBytes() {
+        return sentBytes;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("pace=%.0fkbit/s", rate * 8 / 1000.0);
+    }
+}
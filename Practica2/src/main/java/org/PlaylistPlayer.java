@@ -0,0 +1,365 @@
+package org;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import javazoom.jl.decoder.Bitstream;
+import javazoom.jl.decoder.BitstreamException;
+import javazoom.jl.decoder.Header;
+import javazoom.jl.player.Player;
+
+// Modo playlist (--playlist): un solo proceso para toda la sesión de escucha.
+// Por stdin llegan órdenes, una por línea:
+//   ADD nombre.mp3 (o solo el nombre)   encola una canción
+//   SKIP                                pasa a la siguiente
+//   CLEAR                               descarta las que todavía no se descargaron
+//   QUIT                                termina ya; con EOF termina al acabar la cola
+// Un hilo descarga por delante de la reproducción (--prefetch canciones) hacia un directorio de
+// caché acotado; la reproducción usa un único Player sobre un stream que encadena los archivos,
+// así el cambio de canción no reabre el dispositivo de audio ni deja silencio entre pistas.
+// Salida: STATUS:PREFETCHED:nombre, STATUS:FILE_READY:ruta (empieza a sonar), STATUS:TRACK_FAILED:nombre,
+// STATUS:PLAYLIST_END.
+public class PlaylistPlayer {
+    private static final int CACHE_MB = 64;
+    private static final int PREFETCH = 1;   // Canciones descargadas por delante de la que suena
+
+    private static final String END = "";    // Centinela: no vienen más canciones
+
+    private final Options opts;
+    private final Path cacheDir;
+    private final long cacheBytes;
+    private final boolean play;
+
+    private final BlockingQueue<String> requests = new LinkedBlockingQueue<>();
+    private final BlockingQueue<Track> ready = new LinkedBlockingQueue<>();
+    private final Semaphore prefetch;         // Lugares libres por delante de la reproducción
+    private final Set<Path> pinned = ConcurrentHashMap.newKeySet();   // En cola o sonando: no se expulsan
+    private final TrackStream stream = new TrackStream();
+    private volatile Player player;
+    private volatile boolean quit = false;
+
+    public PlaylistPlayer(Options opts) throws IOException {
+        this.opts = opts;
+        this.cacheDir = Paths.get(opts.get("cache-dir",
+                Paths.get(System.getProperty("java.io.tmpdir"), "clientsound-cache").toString()));
+        this.cacheBytes = opts.getInt("cache-mb", CACHE_MB) * 1024L * 1024L;
+        this.prefetch = new Semaphore(Math.max(1, opts.getInt("prefetch", PREFETCH)));
+        this.play = !opts.has("no-play");
+        Files.createDirectories(cacheDir);
+    }
+
+    public void run() throws Exception {
+        Thread fetcher = new Thread(this::fetchLoop, "prefetch");
+        fetcher.setDaemon(true);
+        fetcher.start();
+        Thread input = new Thread(this::readCommands, "stdin");
+        input.setDaemon(true);
+        input.start();
+        System.out.println("Playlist mode: cache " + cacheDir + " (" + cacheBytes / (1024 * 1024) + " MB)");
+
+        // Un Player por tramo de canciones con el mismo formato de audio
+        while(!quit && stream.next()) {
+            if (play) {
+                player = new Player(stream);
+                player.play();
+                player = null;
+            } else {
+                byte[] sink = new byte[64 * 1024];
+                while(stream.read(sink, 0, sink.length) >= 0) { }
+            }
+        }
+        System.out.println("STATUS:PLAYLIST_END");
+    }
+
+    private void readCommands() {
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))) {
+            String line;
+            while(!quit && (line = in.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty()) continue;
+                String upper = line.toUpperCase();
+                if (upper.equals("SKIP") || upper.equals("NEXT")) {
+                    stream.skip();
+                } else if (upper.equals("CLEAR")) {
+                    requests.clear();
+                } else if (upper.equals("QUIT")) {
+                    quit = true;
+                    Player current = player;
+                    if (current != null) current.close();
+                    stream.close();
+                    return;
+                } else {
+                    requests.add(upper.startsWith("ADD ") ? line.substring(4).trim() : line);
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        requests.add(END);   // EOF: se reproduce lo que queda y se termina
+    }
+
+    // Descarga en orden, como mucho 'prefetch' canciones por delante de la que suena
+    private void fetchLoop() {
+        try {
+            while(true) {
+                String name = requests.take();
+                if (name == END) {
+                    ready.add(Track.END);
+                    return;
+                }
+                prefetch.acquire();
+                Track track = fetch(name);
+                if (track == null) {
+                    prefetch.release();
+                    continue;
+                }
+                pinned.add(track.file);
+                System.out.println("STATUS:PREFETCHED:" + name);
+                ready.add(track);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private Track fetch(String name) {
+        Path cached = cacheDir.resolve(cacheName(name));
+        try {
+            if (Files.isRegularFile(cached)) {
+                System.out.println("Cache hit: " + name);
+            } else {
+                ClientSound.Download download = ClientSound.download(opts, name);
+                if (download.failure != null) {
+                    System.out.println("STATUS:TRACK_FAILED:" + name);
+                    return null;
+                }
+                // Solo entran a la caché archivos verificados
+                Files.move(download.file.toPath(), cached, StandardCopyOption.REPLACE_EXISTING);
+                evict(cached);
+            }
+            Files.setLastModifiedTime(cached, FileTime.fromMillis(System.currentTimeMillis()));
+            return Track.open(name, cached);
+        } catch (Exception e) {
+            System.out.println("STATUS:TRACK_FAILED:" + name + " (" + e.getMessage() + ")");
+            return null;
+        }
+    }
+
+    // Expulsa los archivos usados hace más tiempo hasta quedar dentro del tope (LRU por mtime)
+    private void evict(Path keep) throws IOException {
+        List<Path> files = new ArrayList<>();
+        long total = 0;
+        try (Stream<Path> list = Files.list(cacheDir)) {
+            for (Path path : (Iterable<Path>)list::iterator) {
+                if (!Files.isRegularFile(path)) continue;
+                files.add(path);
+                total += Files.size(path);
+            }
+        }
+        files.sort(Comparator.comparing(path -> path.toFile().lastModified()));
+        for (Path path : files) {
+            if (total <= cacheBytes) break;
+            if (path.equals(keep) || pinned.contains(path)) continue;
+            total -= Files.size(path);
+            Files.delete(path);
+            System.out.println("Cache evicted: " + path.getFileName());
+        }
+    }
+
+    private static String cacheName(String song) {
+        return song.replaceAll("[^A-Za-z0-9._-]", "_") + "-" + Integer.toHexString(song.hashCode()) + ".mp3";
+    }
+
+    // Una canción lista para sonar: la parte de audio del archivo, sin etiquetas ID3
+    private static final class Track {
+        static final Track END = new Track(null, null, 0, 0, 0, 0);
+
+        final String name;
+        final Path file;
+        final long audioStart;
+        final long audioEnd;
+        final int frequency;
+        final int channels;
+
+        Track(String name, Path file, long audioStart, long audioEnd, int frequency, int channels) {
+            this.name = name;
+            this.file = file;
+            this.audioStart = audioStart;
+            this.audioEnd = audioEnd;
+            this.frequency = frequency;
+            this.channels = channels;
+        }
+
+        // Dos pistas pueden ir en el mismo Player si el dispositivo de audio no tiene que cambiar
+        boolean sameFormat(Track other) {
+            return frequency == other.frequency && channels == other.channels;
+        }
+
+        static Track open(String name, Path file) throws IOException {
+            long start = 0;
+            long end = Files.size(file);
+            try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "r")) {
+                byte[] header = new byte[10];
+                // ID3v2 al principio: "ID3", versión, flags y tamaño synchsafe (+10 con footer)
+                if (end >= 10) {
+                    raf.readFully(header);
+                    if (header[0] == 'I' && header[1] == 'D' && header[2] == '3') {
+                        int size = (header[6] & 0x7F) << 21 | (header[7] & 0x7F) << 14 | (header[8] & 0x7F) << 7 | (header[9] & 0x7F);
+                        start = Math.min(end, 10L + size + ((header[5] & 0x10) != 0 ? 10 : 0));
+                    }
+                }
+                // ID3v1 al final: 128 bytes que empiezan con "TAG"
+                if (end - start >= 128) {
+                    raf.seek(end - 128);
+                    raf.readFully(header, 0, 3);
+                    if (header[0] == 'T' && header[1] == 'A' && header[2] == 'G') end -= 128;
+                }
+            }
+
+            int frequency = 0;
+            int channels = 0;
+            try (InputStream in = new FileInputStream(file.toFile())) {
+                in.skip(start);
+                Bitstream bitstream = new Bitstream(in);
+                Header frame = bitstream.readFrame();
+                if (frame != null) {
+                    frequency = frame.frequency();
+                    channels = frame.mode() == Header.SINGLE_CHANNEL ? 1 : 2;
+                }
+            } catch (BitstreamException e) {
+                // Sin cabecera reconocible: va en su propio Player
+            }
+            return new Track(name, file, start, end, frequency, channels);
+        }
+    }
+
+    // Stream que encadena pistas para un Player. Termina (-1) al acabar la playlist o cuando la
+    // siguiente pista tiene otro formato; next() prepara el tramo siguiente.
+    private final class TrackStream extends InputStream {
+        private Track first;               // Primera pista del tramo actual
+        private Track current;
+        private InputStream in;
+        private long remaining;
+        private Track pending;             // Pista que cortó el tramo anterior
+        private volatile boolean skipRequested = false;
+        private boolean finished = false;
+
+        // Hay otro tramo para reproducir (bloquea hasta que la siguiente pista esté descargada)
+        boolean next() throws IOException {
+            if (finished) return false;
+            Track track = pending != null ? pending : take();
+            pending = null;
+            if (track == null || track == Track.END) {
+                finished = true;
+                return false;
+            }
+            first = track;
+            open(track);
+            return true;
+        }
+
+        void skip() {
+            if (current != null) skipRequested = true;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return 0;
+            while(!quit) {
+                if (skipRequested) {
+                    skipRequested = false;
+                    System.out.println("Skipped: " + current.name);
+                    closeCurrent();
+                }
+                if (current == null && !advance()) return -1;
+                int n = in.read(b, off, (int)Math.min(len, remaining));
+                if (n > 0) {
+                    remaining -= n;
+                    return n;
+                }
+                closeCurrent();   // Fin de la pista: la siguiente sigue sin hueco
+            }
+            return -1;
+        }
+
+        // Pasa a la siguiente pista si puede seguir en este Player
+        private boolean advance() throws IOException {
+            if (finished) return false;
+            Track track = take();
+            if (track == null || track == Track.END) {
+                finished = true;
+                return false;
+            }
+            if (!track.sameFormat(first)) {
+                pending = track;   // Otro formato de audio: otro Player
+                return false;
+            }
+            open(track);
+            return true;
+        }
+
+        private Track take() {
+            Track track = ready.poll();
+            if (track != null) return track;
+            System.out.println("Waiting for the next song...");
+            try {
+                while(!quit) {
+                    track = ready.poll(200, TimeUnit.MILLISECONDS);
+                    if (track != null) return track;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return null;
+        }
+
+        private void open(Track track) throws IOException {
+            prefetch.release();   // Salió de la cola: se puede descargar la siguiente
+            in = new FileInputStream(track.file.toFile());
+            in.skip(track.audioStart);
+            remaining = track.audioEnd - track.audioStart;
+            current = track;
+            System.out.println("Now playing: " + track.name);
+            System.out.println("STATUS:FILE_READY:" + track.file.toAbsolutePath());
+        }
+
+        private void closeCurrent() throws IOException {
+            if (current == null) return;
+            in.close();
+            pinned.remove(current.file);
+            current = null;
+            in = null;
+        }
+
+        @Override
+        public void close() {
+            // El Player cierra su stream al terminar cada tramo: el de la playlist sigue abierto
+        }
+    }
+}
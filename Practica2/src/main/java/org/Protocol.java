@@ -0,0 +1,173 @@
+package org;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+// Formato de los datagramas del protocolo de canciones.
+//   Datos:    [int seq >= 0][int CRC32C del payload][payload]
+//   Control:  el primer int es negativo e indica el tipo de paquete.
+//   ACK:      [int seq] del receptor al emisor (formato original).
+//   SACK:     [int acumulativo][long bitmap]: bit i = paquete (acumulativo + 2 + i) recibido.
+//             Los primeros 4 bytes son un ACK acumulativo válido, así que un emisor que solo lee
+//             el int sigue funcionando; el emisor distingue el formato por la longitud.
+public final class Protocol {
+    public static final int FIN = -1;        // [int -1][SHA-256 de la canción completa (32 bytes)]
+    public static final int REQUEST = -2;    // [int -2][byte version][byte mode][short len][nombre UTF-8][opciones]
+    public static final int ERROR = -3;      // [int -3][mensaje UTF-8]
+    public static final int PROBE = -4;      // [int -4][int tamaño del datagrama][relleno]
+    public static final int PROBE_ACK = -5;  // [int -5][int tamaño confirmado]   (receptor -> emisor)
+    public static final int START = -6;      // [int -6][int payload negociado][int primer seq][int id del archivo]
+    public static final int PARITY = -7;     // [int -7][int primer seq][int cantidad][int XOR de longitudes][int CRC32C][XOR de payloads]
+    public static final int NACK = -8;       // [int -8][int id del receptor][int cantidad][int seq]...   (multicast)
+    // En multicast START y FIN llevan además [int cantidad de paquetes] al final
+
+    public static final byte VERSION = 1;
+
+    public static final int DATA_HEADER = 8;     // [int seq][int CRC32C]
+    public static final int PARITY_HEADER = 20;
+    public static final int MAX_PAYLOAD = 8964;  // Datagrama jumbo de 9000 bytes menos cabeceras IP/UDP y DATA_HEADER
+    public static final int HASH_LENGTH = 32;    // SHA-256 en el FIN
+
+    public static final int ACK_LENGTH = 4;
+    public static final int SACK_LENGTH = 12;
+    public static final int SACK_BITS = 64;
+    public static final int NACK_MAX = 64;       // Secuencias por NACK
+
+    // Opciones de la solicitud: [byte tag][int valor] después del nombre
+    public static final byte OPT_SACK = 1;
+    public static final byte OPT_PAYLOAD = 2;    // Payload máximo que acepta el receptor
+    public static final byte OPT_PROBE = 3;      // Pedir búsqueda de MTU antes de transmitir
+    public static final byte OPT_FEC = 4;        // Paquetes de datos por paquete de paridad (K)
+    public static final byte OPT_RESUME = 5;     // Bytes que el receptor ya tiene (0 = desde el principio)
+    public static final byte OPT_FILE_ID = 6;    // Id del archivo del que salieron esos bytes
+
+    private Protocol() { }
+
+    // Solicitud de una canción (modo servidor multi-cliente)
+    public static class Request {
+        public String song;
+        public WindowSender.Mode mode = WindowSender.Mode.GBN;
+        public boolean sack = false;     // El receptor enviará ACKs extendidos
+        public int maxPayload = 0;       // 0 = sin negociar (payload por defecto del servidor)
+        public boolean probe = false;
+        public int fec = 0;              // 0 = sin FEC
+        public int resumeOffset = -1;    // -1 = el receptor no sabe reanudar
+        public int fileId = 0;
+
+        public Request(String song, WindowSender.Mode mode) {
+            this.song = song;
+            this.mode = mode;
+        }
+    }
+
+    public static ByteBuffer encodeRequest(Request request) {
+        byte[] name = request.song.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.allocate(4 + 1 + 1 + 2 + name.length + 6 * 5);
+        buffer.putInt(REQUEST);
+        buffer.put(VERSION);
+        buffer.put((byte)request.mode.ordinal());
+        buffer.putShort((short)name.length);
+        buffer.put(name);
+        if (request.sack) buffer.put(OPT_SACK).putInt(SACK_BITS);
+        if (request.maxPayload > 0) buffer.put(OPT_PAYLOAD).putInt(request.maxPayload);
+        if (request.probe) buffer.put(OPT_PROBE).putInt(1);
+        if (request.fec > 0) buffer.put(OPT_FEC).putInt(request.fec);
+        if (request.resumeOffset >= 0) buffer.put(OPT_RESUME).putInt(request.resumeOffset).put(OPT_FILE_ID).putInt(request.fileId);
+        buffer.flip();
+        return buffer;
+    }
+
+    // Lee una solicitud a partir de la posición actual (justo después del int REQUEST)
+    public static Request decodeRequest(ByteBuffer buffer) {
+        if (buffer.remaining() < 4) return null;
+        byte version = buffer.get();
+        if (version < 1) return null;
+
+        int modeIndex = buffer.get();
+        WindowSender.Mode mode = modeIndex == WindowSender.Mode.SR.ordinal()
+                ? WindowSender.Mode.SR
+                : WindowSender.Mode.GBN;
+
+        int len = buffer.getShort() & 0xFFFF;
+        if (buffer.remaining() < len) return null;
+        byte[] name = new byte[len];
+        buffer.get(name);
+        Request request = new Request(new String(name, StandardCharsets.UTF_8), mode);
+
+        // Opciones desconocidas se ignoran para que clientes nuevos funcionen con servidores viejos
+        while(buffer.remaining() >= 5) {
+            byte tag = buffer.get();
+            int value = buffer.getInt();
+            switch (tag) {
+                case OPT_SACK:
+                    request.sack = value > 0;
+                    break;
+                case OPT_PAYLOAD:
+                    request.maxPayload = value;
+                    break;
+                case OPT_PROBE:
+                    request.probe = value > 0;
+                    break;
+                case OPT_FEC:
+                    request.fec = value;
+                    break;
+                case OPT_RESUME:
+                    request.resumeOffset = value;
+                    break;
+                case OPT_FILE_ID:
+                    request.fileId = value;
+                    break;
+                default:
+                    break;
+            }
+        }
+        return request;
+    }
+
+    public static void encodeSack(ByteBuffer buffer, int cumAck, long bitmap) {
+        buffer.clear();
+        buffer.putInt(cumAck);
+        buffer.putLong(bitmap);
+        buffer.flip();
+    }
+
+    // Paquete de control de 8 bytes: [int código][int valor]
+    public static ByteBuffer encodeControl(int code, int value) {
+        ByteBuffer buffer = ByteBuffer.allocate(8);
+        buffer.putInt(code).putInt(value).flip();
+        return buffer;
+    }
+
+    // START: payload negociado, primer paquete que se enviará (reanudación) e id del archivo.
+    // Los receptores viejos solo leen el payload.
+    public static ByteBuffer encodeStart(int payload, int firstSeq, int fileId) {
+        ByteBuffer buffer = ByteBuffer.allocate(16);
+        buffer.putInt(START).putInt(payload).putInt(firstSeq).putInt(fileId).flip();
+        return buffer;
+    }
+
+    // START de multicast: el anuncio periódico también dice cuántos paquetes tiene la canción
+    public static ByteBuffer encodeAnnounce(int payload, int fileId, int packetCount) {
+        ByteBuffer buffer = ByteBuffer.allocate(20);
+        buffer.putInt(START).putInt(payload).putInt(0).putInt(fileId).putInt(packetCount).flip();
+        return buffer;
+    }
+
+    // NACK con las primeras 'count' secuencias de 'seqs' (como mucho NACK_MAX)
+    public static void encodeNack(ByteBuffer buffer, int receiverId, int[] seqs, int count) {
+        count = Math.min(count, NACK_MAX);
+        buffer.clear();
+        buffer.putInt(NACK).putInt(receiverId).putInt(count);
+        for(int i = 0; i < count; i++) buffer.putInt(seqs[i]);
+        buffer.flip();
+    }
+
+    public static ByteBuffer encodeError(String message) {
+        byte[] text = message.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.allocate(4 + text.length);
+        buffer.putInt(ERROR);
+        buffer.put(text);
+        buffer.flip();
+        return buffer;
+    }
+}
@@ -0,0 +1,208 @@
+package org;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Banco de pruebas de las variantes del protocolo sobre una red emulada.
+// Por cada variante levanta un NetEmulator en este proceso y un Server (modo push) y un
+// ClientSound como procesos hijos con el mismo classpath, y mide sobre la salida del emisor:
+// tiempo hasta el último ACK, goodput y proporción de paquetes retransmitidos.
+//
+// Uso: java -cp target/client.jar org.ProtocolBenchmark   (client.jar ya lleva todas las clases y jlayer)
+//                    [canción.mp3] [--variants=gbn,sr,...] [--runs=1] [--timeout=120] (s)
+//                    [--loss=0.02 --delay=5 --jitter=2 --reorder=0.01 --duplicate=0 --bandwidth=kbit/s ...]
+//                    [--server-args="..."] [--client-args="..."]   (se agregan a todas las variantes)
+public class ProtocolBenchmark {
+    // nombre, argumentos del emisor, argumentos del receptor
+    private static final String[][] VARIANTS = {
+        { "gbn",          "--mode=gbn",        "--mode=gbn" },
+        { "sr",           "--mode=sr",         "--mode=sr" },
+        { "sr+sack",      "--mode=sr",         "--mode=sr --sack" },
+        { "gbn+fec8",     "--mode=gbn --fec=8", "--mode=gbn --fec=8" },
+        { "sr+sack+fec8", "--mode=sr --fec=8", "--mode=sr --sack --fec=8" },
+    };
+
+    private static final Pattern COMPLETED = Pattern.compile(
+            "completed: (\\d+) bytes in ([\\d.,]+) s \\(([\\d.,]+) KB/s\\), (\\d+) retransmitted packets");
+    private static final Pattern TOTAL = Pattern.compile("Total packets: (\\d+)");
+
+    static final class Result {
+        String variant;
+        boolean ok;
+        String status = "";
+        long bytes;
+        double seconds;
+        int packets;
+        int retransmitted;
+        String network = "";
+
+        double goodput() {
+            return seconds > 0 ? bytes / 1024.0 / seconds : 0;
+        }
+
+        double retransmissionRatio() {
+            return packets > 0 ? (double)retransmitted / packets : 0;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options opts = Options.parse(args);
+        File song = new File(opts.positional(0, "serverGUI/resources/songs/CRAZY.mp3"));
+        if (!song.isFile()) {
+            System.out.println("Song not found: " + song);
+            System.exit(1);
+        }
+        NetEmulator.Impairments imp = NetEmulator.Impairments.from(opts);
+        List<String> selected = opts.has("variants") ? Arrays.asList(opts.get("variants", "").split(",")) : null;
+        int runs = opts.getInt("runs", 1);
+        long timeout = opts.getInt("timeout", 120);
+
+        System.out.println("Network: " + imp + ", song: " + song + " (" + song.length() + " bytes), runs: " + runs);
+        System.out.printf("%-14s %4s %9s %12s %10s  %s%n", "variant", "run", "time (s)", "goodput KB/s", "retrans %", "result");
+
+        for (String[] variant : VARIANTS) {
+            if (selected != null && !selected.contains(variant[0])) continue;
+            List<Result> results = new ArrayList<>();
+            for(int run = 1; run <= runs; run++) {
+                Result r = runVariant(variant, song, imp, opts, run, timeout);
+                results.add(r);
+                System.out.printf("%-14s %4d %9.2f %12.1f %10.2f  %s%n", r.variant, run, r.seconds, r.goodput(),
+                        r.retransmissionRatio() * 100, r.ok ? "ok" : "FAILED " + r.status);
+                System.out.println("    " + r.network);
+            }
+            printMean(variant[0], results);
+        }
+    }
+
+    private static void printMean(String variant, List<Result> results) {
+        if (results.size() < 2) return;
+        double seconds = 0, goodput = 0, ratio = 0;
+        int ok = 0;
+        for (Result r : results) {
+            if (!r.ok) continue;
+            seconds += r.seconds;
+            goodput += r.goodput();
+            ratio += r.retransmissionRatio();
+            ok++;
+        }
+        if (ok == 0) return;
+        System.out.printf("%-14s %4s %9.2f %12.1f %10.2f  %d/%d ok%n", variant, "mean",
+                seconds / ok, goodput / ok, ratio / ok * 100, ok, results.size());
+    }
+
+    private static Result runVariant(String[] variant, File song, NetEmulator.Impairments imp, Options opts,
+                                     int run, long timeoutSeconds) throws Exception {
+        Result result = new Result();
+        result.variant = variant[0];
+
+        int clientPort = freePort();
+        File serverOut = File.createTempFile("bench-server", ".log");
+        File clientOut = File.createTempFile("bench-client", ".log");
+        serverOut.deleteOnExit();
+        clientOut.deleteOnExit();
+
+        try (NetEmulator emulator = new NetEmulator(0, new InetSocketAddress("localhost", clientPort), imp, run)) {
+            emulator.start();
+
+            List<String> clientArgs = new ArrayList<>(List.of("--port=" + clientPort, "--no-play", "--no-resume"));
+            clientArgs.addAll(split(variant[2]));
+            clientArgs.addAll(split(opts.get("client-args", "")));
+            Process client = launch("org.ClientSound", clientArgs, clientOut);
+            if (!awaitOutput(clientOut, "Client waiting", 10_000)) {
+                client.destroyForcibly();
+                result.status = "client did not start";
+                return result;
+            }
+
+            List<String> serverArgs = new ArrayList<>(List.of(song.getPath(), "--client=localhost:" + emulator.getListenPort(), "--no-packet-log"));
+            serverArgs.addAll(split(variant[1]));
+            serverArgs.addAll(split(opts.get("server-args", "")));
+            Process server = launch("org.Server", serverArgs, serverOut);
+
+            boolean clientDone = client.waitFor(timeoutSeconds, TimeUnit.SECONDS);
+            boolean serverDone = server.waitFor(clientDone ? 10 : 1, TimeUnit.SECONDS);
+            if (!clientDone) client.destroyForcibly();
+            if (!serverDone) server.destroyForcibly();
+            result.network = emulator.toString();
+
+            String serverLog = new String(Files.readAllBytes(serverOut.toPath()), StandardCharsets.UTF_8);
+            String clientLog = new String(Files.readAllBytes(clientOut.toPath()), StandardCharsets.UTF_8);
+            Matcher total = TOTAL.matcher(serverLog);
+            if (total.find()) result.packets = Integer.parseInt(total.group(1));
+            Matcher completed = COMPLETED.matcher(serverLog);
+            boolean serverCompleted = completed.find();
+            if (serverCompleted) {
+                result.bytes = Long.parseLong(completed.group(1));
+                result.seconds = Double.parseDouble(completed.group(2).replace(',', '.'));
+                result.retransmitted = Integer.parseInt(completed.group(4));
+            }
+
+            if (!clientDone) {
+                result.status = "timeout after " + timeoutSeconds + " s";
+            } else if (!clientLog.contains("STATUS:FILE_READY:")) {
+                result.status = "client: " + lastStatus(clientLog);
+            } else if (!serverCompleted) {
+                result.status = "server did not complete";
+            } else {
+                result.ok = true;
+            }
+        } finally {
+            serverOut.delete();
+            clientOut.delete();
+        }
+        return result;
+    }
+
+    private static Process launch(String mainClass, List<String> args, File output) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(new File(System.getProperty("java.home"), "bin/java").getPath());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(mainClass);
+        command.addAll(args);
+        return new ProcessBuilder(command)
+                .redirectOutput(output)
+                .redirectError(ProcessBuilder.Redirect.DISCARD)   // Log por paquete
+                .start();
+    }
+
+    private static boolean awaitOutput(File file, String text, long timeoutMillis) throws Exception {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while(System.currentTimeMillis() < deadline) {
+            if (new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8).contains(text)) return true;
+            Thread.sleep(50);
+        }
+        return false;
+    }
+
+    private static String lastStatus(String log) {
+        int at = log.lastIndexOf("STATUS:");
+        if (at < 0) return "no status";
+        int end = log.indexOf('\n', at);
+        return log.substring(at, end < 0 ? log.length() : end).trim();
+    }
+
+    private static List<String> split(String args) {
+        List<String> list = new ArrayList<>();
+        for (String arg : args.trim().split("\\s+")) {
+            if (!arg.isEmpty()) list.add(arg);
+        }
+        return list;
+    }
+
+    private static int freePort() throws IOException {
+        try (DatagramSocket socket = new DatagramSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
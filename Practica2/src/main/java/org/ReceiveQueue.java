@@ -0,0 +1,159 @@
+package org;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+// Recepción desacoplada del procesamiento. Un hilo vacía el socket lo más rápido posible hacia
+// un pool de datagramas preasignados y el hilo principal los procesa (ACKs, reordenamiento,
+// disco) a su ritmo. Si el procesamiento se atrasa y el pool se agota, el datagrama se descarta
+// aquí y se cuenta, en lugar de perderse sin rastro en el buffer del kernel.
+public class ReceiveQueue implements Closeable {
+    // Datagrama del pool con su vista ByteBuffer para leer la cabecera
+    public static final class Slot {
+        private byte[] data;
+        private ByteBuffer buffer;
+        private final DatagramPacket packet;
+
+        Slot(int size) {
+            this.data = new byte[size];
+            this.buffer = ByteBuffer.wrap(data);
+            this.packet = new DatagramPacket(data, size);
+        }
+
+        void ensureSize(int size) {
+            if (data.length == size) return;
+            data = new byte[size];
+            buffer = ByteBuffer.wrap(data);
+            packet.setData(data);
+        }
+
+        public byte[] data() {
+            return data;
+        }
+
+        public ByteBuffer buffer() {
+            return buffer;
+        }
+
+        public DatagramPacket packet() {
+            return packet;
+        }
+
+        public int length() {
+            return packet.getLength();
+        }
+    }
+
+    private final DatagramSocket socket;
+    private final ArrayBlockingQueue<Slot> free;
+    private final ArrayBlockingQueue<Slot> filled;
+    private final int capacity;
+    private final Slot spare;              // Destino de los datagramas descartados
+    private volatile int slotSize;
+    private Thread thread;
+
+    // Escritos solo por el hilo receptor
+    private volatile long received = 0;
+    private volatile long drops = 0;
+    private volatile int maxDepth = 0;
+
+    public ReceiveQueue(DatagramSocket socket, int capacity, int slotSize) {
+        this.socket = socket;
+        this.capacity = capacity;
+        this.slotSize = slotSize;
+        this.free = new ArrayBlockingQueue<>(capacity);
+        this.filled = new ArrayBlockingQueue<>(capacity);
+        for(int i = 0; i < capacity; i++) {
+            free.add(new Slot(slotSize));
+        }
+        this.spare = new Slot(slotSize);
+    }
+
+    public void start() {
+        thread = new Thread(this::receiveLoop, "receiver");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void receiveLoop() {
+        try {
+            while(!socket.isClosed()) {
+                Slot slot = free.poll();
+                boolean dropping = slot == null;
+                if (dropping) slot = spare;
+                slot.ensureSize(slotSize);
+                slot.packet.setLength(slot.data.length);
+                socket.receive(slot.packet);
+
+                if (dropping) {
+                    drops++;
+                    continue;
+                }
+                received++;
+                filled.add(slot);   // Nunca está llena: tiene la misma capacidad que el pool
+                int depth = filled.size();
+                if (depth > maxDepth) maxDepth = depth;
+            }
+        } catch (IOException e) {
+            // Socket cerrado al terminar la transferencia
+            if (!socket.isClosed()) e.printStackTrace();
+        }
+    }
+
+    // Cierra el socket (el hilo receptor termina con él) y espera a que el hilo salga
+    @Override
+    public void close() {
+        socket.close();
+        if (thread == null) return;
+        try {
+            thread.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+        // Siguiente datagrama, o null si no llegó ninguno en 'timeoutMillis'
+    public Slot poll(long timeoutMillis) throws InterruptedException {
+        return filled.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    // Devuelve el datagrama al pool una vez procesado
+    public void release(Slot slot) {
+        free.offer(slot);
+    }
+
+    // Nuevo tamaño de datagrama (payload negociado): los slots se ajustan al reutilizarse
+    public void setSlotSize(int size) {
+        slotSize = size;
+    }
+
+    public int getSlotSize() {
+        return slotSize;
+    }
+
+    public int depth() {
+        return filled.size();
+    }
+
+    public long getReceived() {
+        return received;
+    }
+
+    public long getDrops() {
+        return drops;
+    }
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    @Override
+    public String toString() {
+        return "Receive queue: " + received + " datagrams, max depth " + maxDepth + "/" + capacity + ", drops " + drops;
+    }
+}
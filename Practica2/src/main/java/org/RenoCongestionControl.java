@@ -0,0 +1,53 @@
+package org;
+
+// Slow start + AIMD al estilo TCP Reno.
+//  - Slow start: +1 paquete por cada ACK hasta ssthresh (la ventana se duplica por RTT).
+//  - Congestion avoidance: +1 paquete por RTT.
+//  - Pérdida por ACKs duplicados: la ventana se reduce a la mitad.
+//  - Timeout: ssthresh = ventana / 2 y la ventana vuelve a 1.
+public class RenoCongestionControl implements CongestionControl {
+    private static final int MIN_WINDOW = 1;
+
+    private final int maxWindow;
+    private double cwnd = MIN_WINDOW;
+    private double ssthresh;
+
+    public RenoCongestionControl(int maxWindow) {
+        this.maxWindow = maxWindow;
+        this.ssthresh = maxWindow;
+    }
+
+    @Override
+    public int window() {
+        return (int)cwnd;
+    }
+
+    @Override
+    public void onAck(int newlyAcked) {
+        for(int i = 0; i < newlyAcked; i++) {
+            if (cwnd < ssthresh) {
+                cwnd += 1;
+            } else {
+                cwnd += 1 / cwnd;
+            }
+        }
+        cwnd = Math.min(cwnd, maxWindow);
+    }
+
+    @Override
+    public void onLoss() {
+        ssthresh = Math.max(cwnd / 2, 2);
+        cwnd = ssthresh;
+    }
+
+    @Override
+    public void onTimeout() {
+        ssthresh = Math.max(cwnd / 2, 2);
+        cwnd = MIN_WINDOW;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("reno(cwnd=%.1f, ssthresh=%.1f)", cwnd, ssthresh);
+    }
+}
@@ -0,0 +1,73 @@
+package org;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+// Buffer de reordenamiento del receptor (Selective Repeat).
+// Guarda los paquetes que llegan adelantados dentro de la ventana [expected, expected + size)
+// y los entrega en orden en cuanto se completa el hueco.
+public class ReorderBuffer {
+    private final int size;
+    private final byte[][] slots;
+    private final int[] lengths;
+    private final boolean[] present;
+    private int expected = 0;
+
+    public ReorderBuffer(int size) {
+        this.size = size;
+        this.slots = new byte[size][];
+        this.lengths = new int[size];
+        this.present = new boolean[size];
+    }
+
+    public boolean inWindow(int seq) {
+        return seq >= expected && seq < expected + size;
+    }
+
+    // Copia el payload al slot de seq. Devuelve false si ya estaba (duplicado).
+    public boolean store(int seq, byte[] data, int offset, int length) {
+        int slot = seq % size;
+        if (present[slot]) return false;
+
+        if (slots[slot] == null || slots[slot].length < length) {
+            slots[slot] = new byte[length];
+        }
+        System.arraycopy(data, offset, slots[slot], 0, length);
+        lengths[slot] = length;
+        present[slot] = true;
+        return true;
+    }
+
+    // Escribe los paquetes contiguos a partir de expected. Devuelve cuántos se entregaron.
+    public int drainTo(OutputStream out) throws IOException {
+        int delivered = 0;
+        while(present[expected % size]) {
+            int slot = expected % size;
+            out.write(slots[slot], 0, lengths[slot]);
+            present[slot] = false;
+            expected++;
+            delivered++;
+        }
+        return delivered;
+    }
+
+    // Bitmap SACK: bit i = paquete (expected + 1 + i) guardado. El ACK acumulativo es expected - 1,
+    // así que expected nunca está presente y el bitmap empieza en el siguiente.
+    public long sackBitmap() {
+        long bitmap = 0;
+        int limit = Math.min(Protocol.SACK_BITS, size - 1);
+        for(int i = 0; i < limit; i++) {
+            if (present[(expected + 1 + i) % size]) bitmap |= 1L << i;
+        }
+        return bitmap;
+    }
+
+    // Transferencia reanudada: el primer paquete que llega es 'seq' (el buffer todavía está vacío)
+    public void startAt(int seq) {
+        expected = seq;
+    }
+
+    public int getExpected() {
+        return expected;
+    }
+}
@@ -0,0 +1,123 @@
+package org;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Properties;
+
+// Punto de reanudación de una descarga en modo solicitud. Se guarda cada tanto mientras llegan
+// datos y se borra al recibir el FIN; si el receptor muere o se corta la transferencia, la próxima
+// ejecución pide la canción a partir de los bytes ya escritos en el mismo archivo temporal.
+//   fileId:  identificador del contenido que mandó el servidor en START (si cambió, se empieza de cero)
+//   lastSeq: último paquete contiguo escrito; bytes = (lastSeq + 1) * payload
+public class ResumeCheckpoint implements Closeable {
+    private final Path path;
+    private final FileChannel lock;
+    private final String server;
+    private final String song;
+    private File tempFile;
+    private int fileId;
+    private int payload;
+    private int lastSeq = -1;
+
+    private ResumeCheckpoint(Path path, FileChannel lock, String server, String song) {
+        this.path = path;
+        this.lock = lock;
+        this.server = server;
+        this.song = song;
+    }
+
+    // Checkpoint de esta canción en este servidor: el guardado si existe y sirve, o uno vacío.
+    // Devuelve null si otro receptor está descargando la misma canción (sin reanudación).
+    public static ResumeCheckpoint open(InetSocketAddress server, String song) throws IOException {
+        String key = (server.getHostString() + "_" + server.getPort() + "_" + song).replaceAll("[^A-Za-z0-9._-]", "_");
+        Path dir = Paths.get(System.getProperty("java.io.tmpdir"), "clientsound-resume");
+        Files.createDirectories(dir);
+        // El lock se libera con close() o al terminar el proceso
+        FileChannel lock = FileChannel.open(dir.resolve(key + ".lock"), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        if (lock.tryLock() == null) {
+            lock.close();
+            return null;
+        }
+        ResumeCheckpoint checkpoint = new ResumeCheckpoint(dir.resolve(key + ".properties"), lock, server.toString(), song);
+
+        if (Files.isRegularFile(checkpoint.path)) {
+            Properties props = new Properties();
+            try (InputStream in = Files.newInputStream(checkpoint.path)) {
+                props.load(in);
+                File temp = new File(props.getProperty("tempPath", ""));
+                if (song.equals(props.getProperty("song")) && temp.isFile()) {
+                    checkpoint.tempFile = temp;
+                    checkpoint.fileId = Integer.parseInt(props.getProperty("fileId", "0"));
+                    checkpoint.payload = Integer.parseInt(props.getProperty("payload", "0"));
+                    checkpoint.lastSeq = Integer.parseInt(props.getProperty("lastSeq", "-1"));
+                }
+            } catch (IOException | NumberFormatException e) {
+                System.out.println("Ignoring unreadable checkpoint " + checkpoint.path + ": " + e.getMessage());
+            }
+        }
+        return checkpoint;
+    }
+
+    // Bytes que se pueden pedir al servidor: lo que dice el checkpoint, sin pasar de lo que
+    // realmente llegó al disco (el último guardado puede ser posterior al último flush)
+    public long resumeOffset() {
+        if (tempFile == null || payload <= 0) return 0;
+        return Math.min((long)(lastSeq + 1) * payload, tempFile.length());
+    }
+
+    public File getTempFile() {
+        return tempFile;
+    }
+
+    public void setTempFile(File tempFile) {
+        this.tempFile = tempFile;
+    }
+
+    public int getFileId() {
+        return fileId;
+    }
+
+    // Datos de la transferencia en curso (llegan en START)
+    public void begin(int fileId, int payload) {
+        this.fileId = fileId;
+        this.payload = payload;
+    }
+
+    public void save(int lastSeq) throws IOException {
+        this.lastSeq = lastSeq;
+        Properties props = new Properties();
+        props.setProperty("server", server);
+        props.setProperty("song", song);
+        props.setProperty("tempPath", tempFile.getAbsolutePath());
+        props.setProperty("fileId", Integer.toString(fileId));
+        props.setProperty("payload", Integer.toString(payload));
+        props.setProperty("lastSeq", Integer.toString(lastSeq));
+
+        // Se escribe aparte y se reemplaza de una vez: nunca queda un checkpoint a medias
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (OutputStream out = Files.newOutputStream(tmp)) {
+            props.store(out, "ClientSound resume checkpoint");
+        }
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public void delete() throws IOException {
+        Files.deleteIfExists(path);
+    }
+
+    // Suelta el lock: otra descarga de la misma canción (en este proceso o en otro) puede usarlo
+    @Override
+    public void close() throws IOException {
+        lock.close();
+    }
+}
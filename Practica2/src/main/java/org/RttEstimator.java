@@ -0,0 +1,85 @@
+package org;
+
+// Estimación de RTT y cálculo del timeout de retransmisión (Jacobson/Karels, RFC 6298).
+//   SRTT   = 7/8 SRTT + 1/8 R
+//   RTTVAR = 3/4 RTTVAR + 1/4 |SRTT - R|
+//   RTO    = SRTT + 4 RTTVAR   (acotado entre minRto y maxRto)
+// Cada timeout duplica el RTO (backoff exponencial) hasta que llega una muestra válida.
+// Todos los tiempos están en nanosegundos.
+public class RttEstimator {
+    private static final double ALPHA = 0.125;
+    private static final double BETA = 0.25;
+
+    private final long minRto;
+    private final long maxRto;
+
+    private double srtt = -1;
+    private double rttvar = 0;
+    private long rto;
+    private long lastSample = -1;
+    private long samples = 0;
+    private int backoffs = 0;
+
+    public RttEstimator(long initialRto, long minRto, long maxRto) {
+        this.minRto = minRto;
+        this.maxRto = maxRto;
+        this.rto = clamp(initialRto);
+    }
+
+    // Muestra de RTT de un paquete que no fue retransmitido (regla de Karn)
+    public void onSample(long rtt) {
+        if (rtt < 0) return;
+
+        if (srtt < 0) {
+            srtt = rtt;
+            rttvar = rtt / 2.0;
+        } else {
+            rttvar = (1 - BETA) * rttvar + BETA * Math.abs(srtt - rtt);
+            srtt = (1 - ALPHA) * srtt + ALPHA * rtt;
+        }
+        rto = clamp((long)(srtt + 4 * rttvar));
+        lastSample = rtt;
+        samples++;
+        backoffs = 0;
+    }
+
+    // Venció el temporizador: backoff exponencial
+    public void onTimeout() {
+        rto = clamp(rto * 2);
+        backoffs++;
+    }
+
+    public long rto() {
+        return rto;
+    }
+
+    public long getSrtt() {
+        return (long)srtt;
+    }
+
+    public long getRttVar() {
+        return (long)rttvar;
+    }
+
+    public long getLastSample() {
+        return lastSample;
+    }
+
+    public long getSamples() {
+        return samples;
+    }
+
+    public int getBackoffs() {
+        return backoffs;
+    }
+
+    private long clamp(long value) {
+        return Math.max(minRto, Math.min(maxRto, value));
+    }
+
+    @Override
+    public String toString() {
+        return String.format("rtt=%.3fms srtt=%.3fms rttvar=%.3fms rto=%.3fms backoff=%d samples=%d",
+                lastSample / 1e6, srtt / 1e6, rttvar / 1e6, rto / 1e6, backoffs, samples);
+    }
+}
@@ -1,102 +1,258 @@
 package org;
 
-import java.io.File;
-import java.io.FileInputStream;
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
 import java.net.InetAddress;
-import java.net.SocketTimeoutException;
+import java.net.InetSocketAddress;
+import java.net.PortUnreachableException;
 import java.nio.ByteBuffer;
-import java.util.ArrayList;
-import java.util.List;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
 
 public class Server {
     // Attributes
     private static final int PORT = 10000;
+    private static final int SERVE_PORT = 10001;
+    private static final int MULTICAST_PORT = 10003;
     private static final String CLIENT_IP = "localhost";
-    private static final int M = 1024;        // Packet size
-    private static final int K = 5;           // Window size
-    private static final int TIMEOUT = 100;   // Milliseconds
+    private static final int M = 1024;        // Packet size (--payload)
+    private static final int K = 5;           // Window size (--cc=fixed)
+    private static final int MAX_WINDOW = 64; // Tope de la ventana adaptativa (= ventana del receptor SR)
+    private static final int INITIAL_RTO = 100;  // Milliseconds, hasta tener la primera muestra de RTT
+    private static final int MIN_RTO = 5;        // Milliseconds
+    private static final int MAX_RTO = 3000;     // Milliseconds
+    private static final int CACHE_MB = 256;     // Tope de la caché de canciones (--serve)
+    private static final long STATS_INTERVAL = 1_000_000_000L;   // Nanoseconds
+    private static final int BURST = 4;          // Paquetes seguidos que deja salir el pacer
+    private static final long MIN_BURST_TIME = 2_000_000L;   // Nanoseconds: a ritmos altos la ráfaga cubre la resolución del select
 
+    // Uso: server.jar [archivo.mp3] [--mode=gbn|sr] [--cc=reno|fixed] [--max-window=64]
+    //                  [--min-rto=5] [--max-rto=3000] (ms) [--payload=1024] [--probe]
+    //                  [--fec=K] (paridad XOR cada K paquetes; el receptor debe usar el mismo K)
+    //                  [--rate=kbit/s | --audio-rate=1.5 (× bitrate del MP3)] [--burst=4] (pacing)
+    //                  [--client=localhost:10000] (receptor, p. ej. un NetEmulator en el medio)
+    //                  [--no-packet-log] (sin una línea en stderr por paquete y ACK)
+    //                  [--no-stats] (sin la línea CMD:STATS:{json} de cada segundo)
+    //      server.jar archivo.mp3 --multicast=239.1.2.3:10003 [--interface=eth0]
+    //                  [--rate=kbit/s | --audio-rate=1.5] (sin ellos 8 Mbit/s) [--payload=1024] [--no-stats]
+    //      server.jar --serve [--port=10001] [--songs=serverGUI/resources/songs] [--cache-mb=256]
+    //                  [--payload=1024] [--max-payload=8964]
+    //                  [opciones de ventana] [--no-packet-log] [--no-stats]
     public static void main(String[] args) {
         try {
-            DatagramSocket socket = new DatagramSocket();
-            InetAddress address = InetAddress.getByName(CLIENT_IP);
+            Options opts = Options.parse(args);
 
-            String filepath = "/serverGUI/resources/songs/My Man on Willpower.mp3";    // default test mp3
-
-            // Read MP3 file to memory
-            if (args.length > 0 && args[0] != null && !args[0].isEmpty()) {
-                filepath = args[0];
+            if (opts.has("serve")) {
+                // Servidor multi-cliente: los receptores piden la canción por nombre
+                StreamServer server = new StreamServer(opts, opts.getInt("port", SERVE_PORT),
+                        Paths.get(opts.get("songs", StreamServer.defaultSongsDir().toString())),
+                        opts.getInt("payload", M), opts.getInt("max-payload", Protocol.MAX_PAYLOAD),
+                        opts.getInt("cache-mb", CACHE_MB) * 1024L * 1024L);
+                server.run();
+                return;
+            }
+            if (opts.has("multicast")) {
+                multicastSong(opts);
+                return;
             }
+            pushSong(opts);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    // Modo original: envía una canción a un único receptor en CLIENT_IP:PORT (o --client)
+    private static void pushSong(Options opts) throws Exception {
+        WindowSender.Mode mode = WindowSender.Mode.parse(opts.get("mode", "gbn"));
+        InetSocketAddress address = opts.has("client")
+                ? Options.parseAddress(opts.get("client", ""), PORT)
+                : new InetSocketAddress(InetAddress.getByName(CLIENT_IP), PORT);
+        String filepath = opts.positional(0, "/serverGUI/resources/songs/My Man on Willpower.mp3");    // default test mp3
+
+        // Connected channel so each datagram is a gathering write: header (4 bytes) + payload slice
+        DatagramChannel channel = DatagramChannel.open();
+        channel.connect(address);
+        channel.configureBlocking(false);
+        Selector selector = Selector.open();
+        channel.register(selector, SelectionKey.OP_READ);
 
-            File file = new File(filepath);
-            FileInputStream f = new FileInputStream(file);
-            byte[] fileBytes = f.readAllBytes();
-            f.close();
-
-            // Split into packets
-            List<byte[]> packets = new ArrayList<>();
-            int totalPackets = (int)Math.ceil((double)fileBytes.length / M);
-
-            for(int i=0; i<totalPackets; i++) {
-                int start = i * M;
-                int end = Math.min(fileBytes.length, (i+1) * M);
-                int len = end - start;
-
-                // Build packet: Header (4 bytes) + Data
-                ByteBuffer buffer = ByteBuffer.allocate(4 + len);
-                buffer.putInt(i);
-                buffer.put(fileBytes, start, len);
-                packets.add(buffer.array());
+        ByteBuffer[] datagram = new ByteBuffer[2];
+        Session.Transport transport = (header, payload) -> {
+            try {
+                if (payload == null) {
+                    channel.write(header);
+                } else {
+                    datagram[0] = header;
+                    datagram[1] = payload;
+                    channel.write(datagram);   // Si el buffer del socket está lleno no se envía: cuenta como pérdida
+                }
+            } catch (PortUnreachableException e) {
+                // El receptor aún no escucha: igual que una pérdida
             }
+        };
+
+        // Tamaño del payload: fijo (--payload, el receptor debe aceptarlo) o buscado con sondas (--probe)
+        int payloadSize = opts.getInt("payload", opts.has("probe") ? Protocol.MAX_PAYLOAD : M);
+        int fec = opts.getInt("fec", 0);
+        if (opts.has("probe")) {
+            payloadSize = probePayload(channel, selector, transport, address, payloadSize,
+                    fec > 0 ? Protocol.PARITY_HEADER : Protocol.DATA_HEADER);
+        }
+        if (payloadSize != M) {
+            sendControl(channel, Protocol.START, payloadSize);
+        }
+
+        // Map MP3 file into memory: packets are slices of the mapping, nothing is copied to the heap
+        MappedSong song = new MappedSong(Paths.get(filepath), payloadSize);
+        int totalPackets = song.packetCount();
+
+        CongestionControl cc = newCongestionControl(opts);
+        RttEstimator rtt = newRttEstimator(opts);
+        WindowSender sender = new WindowSender(mode, totalPackets, cc, rtt);
+        Session session = new Session(address, filepath, song, sender, transport, System.nanoTime());
+        if (fec > 0) session.setFec(new FecEncoder(fec, payloadSize));
+        boolean statsLines = !opts.has("no-stats");
+        session.setPacketLog(!opts.has("no-packet-log"));
+        session.setStatsLines(statsLines);
+        sender.setPacer(newPacer(opts, song, System.nanoTime()));
+        System.out.println("Starting transmission (" + mode + ", " + cc + (fec > 0 ? ", FEC K=" + fec : "")
+                + (sender.getPacer() != null ? ", " + sender.getPacer() : "")
+                + "). Total packets: " + totalPackets);
+
+        ByteBuffer ackBuffer = ByteBuffer.allocateDirect(Protocol.SACK_LENGTH);
+        long lastStats = System.nanoTime();
 
-            int base = 0;
-            int nextSeq = 0;
-            socket.setSoTimeout(TIMEOUT);
-            System.out.println("Starting transmission. Total packets: " + totalPackets);
-
-            while(base < totalPackets) {
-                // 1. Send packets within the available window
-                while(nextSeq < base + K && nextSeq < totalPackets) {
-                    byte[] data = packets.get(nextSeq);
-                    DatagramPacket packet = new DatagramPacket(data, data.length, address, PORT);
-                    socket.send(packet);
-                    System.err.println("Sent seq: " + nextSeq);
-                    nextSeq++;
+        // Después del último ACK la sesión sigue en CLOSING un rato, repitiendo el FIN (lleva el SHA-256)
+        while(session.getState() != Session.State.DONE) {
+            // 1. Resend whatever timed out and send packets within the available window
+            session.pump(System.nanoTime());
+            if (session.getState() == Session.State.DONE) break;
+
+            // 2. Wait for ACKs until the next timer expires, then drain every pending one
+            long wait = TimeUnit.NANOSECONDS.toMillis(session.nextTimeout(System.nanoTime()) + 999_999);
+            if (selector.select(Math.max(1, wait)) > 0) {
+                selector.selectedKeys().clear();
+                while(true) {
+                    ackBuffer.clear();
+                    int n;
+                    try {
+                        n = channel.read(ackBuffer);
+                    } catch (PortUnreachableException e) {
+                        continue;
+                    }
+                    if (n <= 0) break;
+                    if (n < Protocol.ACK_LENGTH) continue;
+                    ackBuffer.flip();
+                    session.onAck(ackBuffer, System.nanoTime());
                 }
+            }
+
+            long now = System.nanoTime();
+            if (now - lastStats >= STATS_INTERVAL) {
+                System.out.println("RTT: " + rtt + " window: " + cc);
+                if (statsLines && session.getState() == Session.State.STREAMING) System.out.println(session.statsLine(now));
+                lastStats = now;
+            }
+        }
+        System.out.println("RTT: " + rtt);
+        System.out.println("Retransmitted packets: " + sender.getRetransmissions() + ", final window: " + cc);
+        System.out.println("Transfer completed!");
 
-                // 2. Wait for ACKs
+        selector.close();
+        channel.close();
+        song.close();
+    }
+
+    // Una sola copia de cada paquete para todos los receptores del grupo; se reparan con NACKs
+    private static void multicastSong(Options opts) throws Exception {
+        InetSocketAddress group = Options.parseAddress(opts.get("multicast", ""), MULTICAST_PORT);
+        if (!group.getAddress().isMulticastAddress()) {
+            System.out.println("Not a multicast address: " + group);
+            return;
+        }
+        String filepath = opts.positional(0, "/serverGUI/resources/songs/My Man on Willpower.mp3");
+        try (MappedSong song = new MappedSong(Paths.get(filepath), opts.getInt("payload", M))) {
+            long now = System.nanoTime();
+            Pacer pacer = MulticastSender.newPacer(opts, song, now);
+            MulticastSender sender = new MulticastSender(group, MulticastSender.multicastInterface(opts),
+                    song, filepath, pacer, now);
+            System.out.println("Multicasting to " + group + " (" + pacer + "). Total packets: " + song.packetCount());
+            sender.run(!opts.has("no-stats"));
+        }
+    }
+
+    // Busca el datagrama más grande que llega al receptor; devuelve el payload a usar (<= maxPayload)
+    // de forma que quepa con la cabecera más grande que se vaya a enviar
+    private static int probePayload(DatagramChannel channel, Selector selector, Session.Transport transport,
+                                    InetSocketAddress address, int maxPayload, int headerSize) throws Exception {
+        int limit = Math.min(Protocol.DATA_HEADER + maxPayload, MtuProbe.localLimit(address));
+        MtuProbe probe = new MtuProbe(limit);
+        ByteBuffer reply = ByteBuffer.allocateDirect(Protocol.SACK_LENGTH);
+
+        while(!probe.isDone(System.nanoTime())) {
+            probe.pump(transport, System.nanoTime());
+            long wait = TimeUnit.NANOSECONDS.toMillis(probe.nextTimeout(System.nanoTime()) + 999_999);
+            if (selector.select(Math.max(1, wait)) == 0) continue;
+            selector.selectedKeys().clear();
+            while(true) {
+                reply.clear();
+                int n;
                 try {
-                    byte[] ackBuffer = new byte[4];
-                    DatagramPacket ackPacket = new DatagramPacket(ackBuffer, ackBuffer.length);
-                    socket.receive(ackPacket);
-
-                    int ackNum = ByteBuffer.wrap(ackPacket.getData()).getInt();
-                    System.err.println("Received ACK: " + ackNum);
-
-                    if(ackNum >= base)
-                        base = ackNum + 1;
-                } 
-                catch (SocketTimeoutException e) {
-                    System.out.println("Timeout! Resending window from " + base);
-                    nextSeq = base;
+                    n = channel.read(reply);
+                } catch (PortUnreachableException e) {
+                    continue;
                 }
+                if (n <= 0) break;
+                if (n >= 8 && reply.getInt(0) == Protocol.PROBE_ACK) probe.onProbeAck(reply.getInt(4));
             }
-            System.out.println("Transferencia completada. Enviando paquete de FIN.");
+        }
+
+        int best = probe.result();
+        int payload = best > 0 ? Math.min(maxPayload, best - headerSize) : Math.min(maxPayload, M);
+        System.out.println("MTU probe: largest datagram " + best + " bytes, payload " + payload);
+        return payload;
+    }
 
-            // Crear paquete vacío (Solo header, sin datos)
-            ByteBuffer finBuffer = ByteBuffer.allocate(4);
-            finBuffer.putInt(-1); // Usamos -1 como código de "FIN"
-            byte[] finBytes = finBuffer.array();
+    private static void sendControl(DatagramChannel channel, int code, int value) throws Exception {
+        try {
+            channel.write(Protocol.encodeControl(code, value));
+        } catch (PortUnreachableException e) {
+            // Solo informativo: el receptor acepta cualquier tamaño hasta su buffer
+        }
+    }
 
-            DatagramPacket finPacket = new DatagramPacket(finBytes, finBytes.length, address, PORT);
-            socket.send(finPacket);
+    static CongestionControl newCongestionControl(Options opts) {
+        return CongestionControl.create(opts.get("cc", "reno"), K, opts.getInt("max-window", MAX_WINDOW));
+    }
 
-            System.out.println("Transfer completed!");
-            socket.close();
-        } catch (Exception e) {
-            e.printStackTrace();
+    // Pacer según --rate (kbit/s) o --audio-rate (múltiplo del bitrate de la canción); null si no se pidió
+    static Pacer newPacer(Options opts, MappedSong song, long now) {
+        long bitsPerSecond;
+        if (opts.has("audio-rate")) {
+            int audio = song.bitrate();
+            if (audio <= 0) {
+                System.out.println("Unknown audio bitrate, sending without pacing");
+                return null;
+            }
+            bitsPerSecond = (long)(audio * opts.getDouble("audio-rate", 1.5));
+        } else if (opts.has("rate")) {
+            bitsPerSecond = opts.getInt("rate", 0) * 1000L;
+        } else {
+            return null;
         }
+        if (bitsPerSecond <= 0) return null;
+
+        long bytesPerSecond = bitsPerSecond / 8;
+        long packet = Protocol.DATA_HEADER + song.payloadSize();
+        long burst = Math.max(opts.getInt("burst", BURST) * packet, bytesPerSecond * MIN_BURST_TIME / 1_000_000_000L);
+        return new Pacer(bytesPerSecond, burst, now);
+    }
+
+    static RttEstimator newRttEstimator(Options opts) {
+        return new RttEstimator(
+                TimeUnit.MILLISECONDS.toNanos(INITIAL_RTO),
+                TimeUnit.MILLISECONDS.toNanos(opts.getInt("min-rto", MIN_RTO)),
+                TimeUnit.MILLISECONDS.toNanos(opts.getInt("max-rto", MAX_RTO)));
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,219 @@
+package org;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+
+// Transferencia de una canción hacia un receptor.
+// Máquina de estados: STREAMING -> CLOSING (FIN enviado, se espera por ACKs rezagados) -> DONE.
+// Cada paquete lleva el CRC32C de su payload y el FIN el SHA-256 de la canción completa.
+public class Session {
+    public enum State { STREAMING, CLOSING, DONE }
+
+    // Envío de un datagrama: header + payload (payload es null en paquetes de control)
+    public interface Transport {
+        void send(ByteBuffer header, ByteBuffer payload) throws IOException;
+    }
+
+    private static final long LINGER = 2_000_000_000L;          // Nanoseconds en CLOSING
+    private static final long IDLE_TIMEOUT = 15_000_000_000L;   // Nanoseconds sin ACKs
+    private static final long FIN_INTERVAL = 250_000_000L;      // Nanoseconds entre copias del FIN en CLOSING
+
+    private final SocketAddress address;
+    private final String name;
+    private final MappedSong song;
+    private final WindowSender sender;
+    private final Transport transport;
+    private final ByteBuffer header = ByteBuffer.allocateDirect(Protocol.DATA_HEADER);
+    private final WindowSender.PacketSink sink = this::sendPacket;
+
+    private boolean packetLog = true; // Una línea en stderr por paquete y por ACK (--no-packet-log)
+    private boolean statsLines = true;   // CMD:STATS:{json} final en stdout (--no-stats)
+    private FecEncoder fec;           // null = sin FEC
+    private int lastParitySeq = -1;   // La paridad de un bloque se envía una sola vez
+    private ByteBuffer start;         // START pendiente de confirmar (null = confirmado o no hace falta)
+    private int startSeq;             // Primer paquete que anuncia el START
+    private long lastStartAt;
+
+    private State state = State.STREAMING;
+    private final long startedAt;
+    private long lastAckAt;
+    private long finishedAt;
+    private long lastFinAt;
+    private long lastReportAt;
+    private long lastReportBytes;
+
+    public Session(SocketAddress address, String name, MappedSong song, WindowSender sender, Transport transport, long now) {
+        this.address = address;
+        this.name = name;
+        this.song = song;
+        this.sender = sender;
+        this.transport = transport;
+        this.startedAt = now;
+        this.lastAckAt = now;
+        this.lastReportAt = now;
+    }
+
+    // Avanza la máquina de estados: retransmisiones, ventana nueva y cierre
+    public void pump(long now) throws IOException {
+        if (state == State.CLOSING) {
+            if (now - finishedAt >= LINGER) {
+                state = State.DONE;
+            } else if (now - lastFinAt >= FIN_INTERVAL) {
+                // Sin el FIN el receptor no puede verificar el archivo: se repite mientras dure el cierre
+                sendFin();
+                lastFinAt = now;
+            }
+            return;
+        }
+        if (state != State.STREAMING) return;
+
+        if (start != null && now - lastStartAt >= sender.getRttEstimator().rto()) {
+            // Sin el START un receptor que reanuda no sabe desde dónde mandamos: se repite hasta el primer ACK
+            sendStart(now);
+        }
+        sender.retransmitExpired(sink, now);
+        sender.sendWindow(sink, now);
+
+        if (sender.isDone()) {
+            sendFin();
+            state = State.CLOSING;
+            finishedAt = now;
+            lastFinAt = now;
+            System.out.println(summary(now));
+            if (statsLines) System.out.println(statsLine(now));
+        }
+        else if (now - lastAckAt >= IDLE_TIMEOUT) {
+            System.out.println("Session " + address + " timed out at seq " + sender.getBase());
+            state = State.DONE;
+        }
+    }
+
+    // ACK original (4 bytes) o extendido con SACK (12 bytes), desde la posición 0 del buffer
+    public void onAck(ByteBuffer ack, long now) throws IOException {
+        int ackNum = ack.getInt(0);
+        if (packetLog) System.err.println("Received ACK: " + ackNum + " from " + address);
+        // Un ACK viejo (p. ej. un receptor que no vio el START y confirma -1) no mantiene viva la sesión
+        if (ackNum >= sender.getBase() - 1) lastAckAt = now;
+        if (ackNum >= startSeq) start = null;
+        if (state == State.STREAMING) {
+            if (ack.limit() >= Protocol.SACK_LENGTH) {
+                sender.onSack(ackNum, ack.getLong(4), now);
+            } else {
+                sender.onAck(ackNum, now);
+            }
+            sender.getStats().setAckedBytes(ackedBytes());
+        } else if (state == State.CLOSING) {
+            sendFin();   // El receptor sigue confirmando: quizá no vio el FIN
+        }
+    }
+
+    // Nanosegundos hasta que la sesión necesita atención
+    public long nextTimeout(long now) {
+        switch (state) {
+            case STREAMING:
+                long timeout = sender.nextTimeout(now);
+                if (start != null) timeout = Math.min(timeout, lastStartAt + sender.getRttEstimator().rto() - now);
+                return timeout;
+            case CLOSING:   return Math.min(finishedAt + LINGER, lastFinAt + FIN_INTERVAL) - now;
+            default:        return 0;
+        }
+    }
+
+    private void sendPacket(int seq) throws IOException {
+        header.clear();
+        header.putInt(seq).putInt(song.packetCrc(seq)).flip();
+        ByteBuffer payload = song.payload(seq);
+        int bytes = Protocol.DATA_HEADER + payload.remaining();
+        transport.send(header, payload);
+        if (packetLog) System.err.println("Sent seq: " + seq);
+
+        // Primer envío del último paquete de un bloque: va seguido de su paridad
+        if (fec != null && seq > lastParitySeq && fec.isBlockEnd(seq, song.packetCount())) {
+            bytes += fec.sendParity(seq, song, transport);
+            lastParitySeq = seq;
+        }
+        // Las retransmisiones y la paridad también gastan del ritmo objetivo
+        Pacer pacer = sender.getPacer();
+        if (pacer != null) pacer.consume(bytes);
+        sender.getStats().onSent(bytes);
+    }
+
+    // START (payload negociado, primer seq, id del archivo); se repite hasta un ACK >= firstSeq
+    public void setStart(ByteBuffer start, int firstSeq, long now) throws IOException {
+        this.start = start;
+        this.startSeq = firstSeq;
+        sendStart(now);
+    }
+
+    private void sendStart(long now) throws IOException {
+        transport.send(start.duplicate(), null);
+        lastStartAt = now;
+    }
+
+    private void sendFin() throws IOException {
+        header.clear();
+        header.putInt(Protocol.FIN).flip();
+        transport.send(header, song.sha256());
+    }
+
+    public long ackedBytes() {
+        return Math.min(song.size(), (long)sender.getBase() * song.payloadSize());
+    }
+
+    // Throughput desde el último reporte
+    public String report(long now) {
+        long bytes = ackedBytes();
+        double seconds = Math.max(1e-9, (now - lastReportAt) / 1e9);
+        double rate = (bytes - lastReportBytes) / 1024.0 / seconds;
+        lastReportAt = now;
+        lastReportBytes = bytes;
+        Pacer pacer = sender.getPacer();
+        return String.format("Session %s '%s': %.1f KB/s, %d/%d bytes, %s, %s%s",
+                address, name, rate, bytes, song.size(),
+                sender.getCongestionControl(), sender.getRttEstimator(), pacer != null ? ", " + pacer : "");
+    }
+
+    // Línea de telemetría para la GUI: CMD:STATS:{...}. Terminada la transferencia, los tiempos
+    // se cuentan hasta el último ACK y no hasta el fin del cierre
+    public String statsLine(long now) {
+        long at = state == State.STREAMING ? now : finishedAt;
+        return "CMD:STATS:" + sender.getStats().toJson(String.valueOf(address), name, song.size(), at);
+    }
+
+    public String summary(long now) {
+        double seconds = Math.max(1e-9, (now - startedAt) / 1e9);
+        return String.format("Session %s '%s' completed: %d bytes in %.2f s (%.1f KB/s), %d retransmitted packets%s",
+                address, name, song.size(), seconds, song.size() / 1024.0 / seconds, sender.getRetransmissions(),
+                fec != null ? ", " + fec.getParitySent() + " parity packets (K=" + fec.blockSize() + ")" : "");
+    }
+
+    public void setPacketLog(boolean packetLog) {
+        this.packetLog = packetLog;
+        sender.setPacketLog(packetLog);
+    }
+
+    public void setStatsLines(boolean statsLines) {
+        this.statsLines = statsLines;
+    }
+
+    public void setFec(FecEncoder fec) {
+        this.fec = fec;
+    }
+
+    public SocketAddress getAddress() {
+        return address;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public MappedSong getSong() {
+        return song;
+    }
+
+    public WindowSender getSender() {
+        return sender;
+    }
+}
@@ -0,0 +1,142 @@
+package org;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+// Caché de canciones empaquetadas compartida entre sesiones.
+// La clave es (ruta, mtime): si el archivo cambia en disco se vuelve a mapear.
+// Las canciones se mapean y se cargan en memoria una sola vez; cada sesión las toma con acquire()
+// y las devuelve con release(). Cada payload negociado es una vista sobre el mismo mapeo, así que
+// la canción cuenta una sola vez contra el tope. Si se supera el tope de bytes se expulsan las
+// menos usadas recientemente (LRU) que no tengan sesiones activas.
+public class SongCache {
+    private final long capacityBytes;
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long cachedBytes = 0;
+
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    public SongCache(long capacityBytes) {
+        this.capacityBytes = capacityBytes;
+    }
+
+    public synchronized MappedSong acquire(Path path, int payloadSize) throws IOException {
+        Path normalized = path.toAbsolutePath().normalize();
+        Key key = new Key(normalized, Files.getLastModifiedTime(normalized).toMillis());
+
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            hits++;
+            entry.users++;
+        } else {
+            misses++;
+            dropStale(normalized);
+            MappedSong song = new MappedSong(normalized, payloadSize);
+            song.load();   // Se trae a memoria ahora para que las siguientes sesiones no toquen disco
+            entry = new Entry(key, song);
+            entries.put(key, entry);
+            cachedBytes += song.size();
+            // Tomada antes de expulsar: la recién cargada nunca es candidata, aunque sola no quepa
+            entry.users++;
+            evict();
+        }
+        // Una vista por payload, compartida entre sesiones (y con ella los CRC por paquete)
+        return entry.views.computeIfAbsent(payloadSize, entry.song::view);
+    }
+
+    public synchronized void release(MappedSong song) throws IOException {
+        for (Entry entry : entries.values()) {
+            if (entry.views.get(song.payloadSize()) == song) {
+                entry.users--;
+                evict();
+                return;
+            }
+        }
+        song.close();   // Ya había sido expulsada mientras estaba en uso
+    }
+
+    // Versiones anteriores del mismo archivo que ya nadie usa
+    private void dropStale(Path path) throws IOException {
+        Iterator<Entry> it = entries.values().iterator();
+        while(it.hasNext()) {
+            Entry entry = it.next();
+            if (entry.key.path.equals(path) && entry.users == 0) {
+                remove(it, entry);
+            }
+        }
+    }
+
+    // LRU: el orden de acceso del LinkedHashMap deja primero a las menos usadas recientemente
+    private void evict() throws IOException {
+        Iterator<Entry> it = entries.values().iterator();
+        while(cachedBytes > capacityBytes && it.hasNext()) {
+            Entry entry = it.next();
+            if (entry.users == 0) remove(it, entry);
+        }
+    }
+
+    private void remove(Iterator<Entry> it, Entry entry) throws IOException {
+        it.remove();
+        cachedBytes -= entry.song.size();
+        evictions++;
+        entry.song.close();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    @Override
+    public synchronized String toString() {
+        long total = hits + misses;
+        return String.format("cache: %d songs, %.1f/%.1f MB, hits=%d misses=%d (%.0f%%) evictions=%d",
+                entries.size(), cachedBytes / 1048576.0, capacityBytes / 1048576.0,
+                hits, misses, total == 0 ? 0.0 : 100.0 * hits / total, evictions);
+    }
+
+    private static final class Key {
+        final Path path;
+        final long modified;
+
+        Key(Path path, long modified) {
+            this.path = path;
+            this.modified = modified;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) return false;
+            Key other = (Key)o;
+            return path.equals(other.path) && modified == other.modified;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(path, modified);
+        }
+    }
+
+    private static final class Entry {
+        final Key key;
+        final MappedSong song;   // Dueño del mapeo
+        final Map<Integer, MappedSong> views = new HashMap<>();
+        int users = 0;
+
+        Entry(Key key, MappedSong song) {
+            this.key = key;
+            this.song = song;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package org;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+
+// Buffer circular acotado entre la recepción y el reproductor.
+// El receptor escribe los bytes en orden y se bloquea si el buffer está lleno (backpressure);
+// el Player lo lee como un InputStream y se bloquea si está vacío (underrun).
+public class StreamBuffer extends InputStream {
+    private final byte[] ring;
+    private int readPos = 0;
+    private int writePos = 0;
+    private int size = 0;
+    private boolean finished = false;
+    private boolean closed = false;   // El reproductor dejó de leer
+    private boolean reading = false;
+
+    private long totalWritten = 0;
+    private int underruns = 0;
+
+    public StreamBuffer(int capacity) {
+        this.ring = new byte[capacity];
+    }
+
+    public int capacity() {
+        return ring.length;
+    }
+
+    // Copia len bytes al buffer, esperando a que el reproductor libere espacio si hace falta
+    public synchronized void write(byte[] data, int offset, int length) throws IOException {
+        while(length > 0) {
+            while(size == ring.length && !closed) {
+                await();
+            }
+            if (closed) return;   // Sin lector: los bytes solo van al archivo
+            int chunk = Math.min(length, Math.min(ring.length - size, ring.length - writePos));
+            System.arraycopy(data, offset, ring, writePos, chunk);
+            writePos = (writePos + chunk) % ring.length;
+            size += chunk;
+            totalWritten += chunk;
+            offset += chunk;
+            length -= chunk;
+            notifyAll();
+        }
+    }
+
+    // No llegarán más datos: el lector recibirá EOF al vaciar el buffer
+    public synchronized void finish() {
+        finished = true;
+        notifyAll();
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        notifyAll();
+    }
+
+    // Espera hasta tener 'threshold' bytes, el buffer lleno o el fin de la transmisión
+    public synchronized void awaitPrebuffer(int threshold) throws IOException {
+        int target = Math.min(threshold, ring.length);
+        while(size < target && !finished) {
+            await();
+        }
+    }
+
+    @Override
+    public synchronized int read() throws IOException {
+        byte[] one = new byte[1];
+        int n = read(one, 0, 1);
+        return n == -1 ? -1 : one[0] & 0xFF;
+    }
+
+    @Override
+    public synchronized int read(byte[] buffer, int offset, int length) throws IOException {
+        if (length == 0) return 0;
+
+        if (size == 0 && !finished && reading) underruns++;
+        while(size == 0) {
+            if (finished) return -1;
+            await();
+        }
+        reading = true;
+
+        int chunk = Math.min(length, Math.min(size, ring.length - readPos));
+        System.arraycopy(ring, readPos, buffer, offset, chunk);
+        readPos = (readPos + chunk) % ring.length;
+        size -= chunk;
+        notifyAll();
+        return chunk;
+    }
+
+    @Override
+    public synchronized int available() {
+        return size;
+    }
+
+    public synchronized long getTotalWritten() {
+        return totalWritten;
+    }
+
+    // Veces que el reproductor se quedó sin datos después de empezar a sonar
+    public synchronized int getUnderruns() {
+        return underruns;
+    }
+
+    private void await() throws InterruptedIOException {
+        try {
+            wait();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting on stream buffer");
+        }
+    }
+}
@@ -0,0 +1,284 @@
+package org;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+// Servidor de canciones de larga duración: atiende a varios ClientSound a la vez.
+// Todas las sesiones comparten un único DatagramChannel no bloqueante y un Selector;
+// cada datagrama entrante se despacha a la sesión de su dirección de origen.
+// Un error con un cliente (petición inválida, archivo que desaparece, envío fallido) solo descarta
+// esa sesión: el resto sigue transmitiendo.
+public class StreamServer {
+    private static final int RECEIVE_BUFFER = 2048;
+    private static final int FALLBACK_PAYLOAD = 1024;   // Si ninguna sonda de MTU llega
+    private static final long REPORT_INTERVAL = 1_000_000_000L;   // Nanoseconds
+
+    private final Options opts;
+    private final Path songsDir;
+    private final int payloadSize;       // Para receptores que no negocian
+    private final int maxPayload;
+    private final DatagramChannel channel;
+    private final Selector selector;
+    private final Map<SocketAddress, Session> sessions = new HashMap<>();
+    private final Map<SocketAddress, PendingProbe> probes = new HashMap<>();
+    private final SongCache cache;
+
+    private final ByteBuffer in = ByteBuffer.allocateDirect(RECEIVE_BUFFER);
+    private final ByteBuffer out;
+
+    public StreamServer(Options opts, int port, Path songsDir, int payloadSize, int maxPayload, long cacheBytes) throws IOException {
+        this.opts = opts;
+        this.cache = new SongCache(cacheBytes);
+        this.songsDir = songsDir.toAbsolutePath().normalize();
+        this.payloadSize = payloadSize;
+        this.maxPayload = Math.max(payloadSize, maxPayload);
+        this.out = ByteBuffer.allocateDirect(Protocol.PARITY_HEADER + this.maxPayload);   // Datos o paridad
+
+        channel = DatagramChannel.open();
+        channel.bind(new InetSocketAddress(port));
+        channel.configureBlocking(false);
+        selector = Selector.open();
+        channel.register(selector, SelectionKey.OP_READ);
+        System.out.println("Song server listening on port " + port + ", songs from " + this.songsDir);
+    }
+
+    public void run() throws IOException {
+        long lastReport = System.nanoTime();
+
+        while(true) {
+            long now = System.nanoTime();
+
+            // 1. Avanzar sondas de MTU y sesiones, y calcular cuándo necesita atención la más urgente
+            long wait = REPORT_INTERVAL;
+            Iterator<Map.Entry<SocketAddress, PendingProbe>> pit = probes.entrySet().iterator();
+            while(pit.hasNext()) {
+                Map.Entry<SocketAddress, PendingProbe> entry = pit.next();
+                PendingProbe pending = entry.getValue();
+                try {
+                    pending.probe.pump(transportTo(entry.getKey()), now);
+                    if (pending.probe.isDone(now)) {
+                        pit.remove();
+                        int best = pending.probe.result();
+                        int payload = best > 0
+                                ? Math.min(pending.payload, best - headerSize(pending.request))
+                                : Math.min(pending.payload, FALLBACK_PAYLOAD);
+                        System.out.println("MTU probe " + entry.getKey() + ": largest datagram " + best + " bytes, payload " + payload);
+                        startSession(entry.getKey(), pending.request, payload, now);
+                        continue;
+                    }
+                } catch (Exception e) {
+                    pit.remove();
+                    System.out.println("Request from " + entry.getKey() + " dropped: " + e);
+                    continue;
+                }
+                wait = Math.min(wait, pending.probe.nextTimeout(now));
+            }
+            Iterator<Session> it = sessions.values().iterator();
+            while(it.hasNext()) {
+                Session session = it.next();
+                try {
+                    session.pump(now);
+                } catch (Exception e) {
+                    it.remove();
+                    drop(session, e);
+                    continue;
+                }
+                if (session.getState() == Session.State.DONE) {
+                    cache.release(session.getSong());
+                    it.remove();
+                    continue;
+                }
+                wait = Math.min(wait, session.nextTimeout(now));
+            }
+
+            // 2. Esperar datagramas y despacharlos todos
+            long waitMillis = (Math.max(0, wait) + 999_999) / 1_000_000;
+            if (selector.select(Math.max(1, waitMillis)) > 0) {
+                selector.selectedKeys().clear();
+                receiveAll();
+            }
+
+            // 3. Throughput por sesión
+            now = System.nanoTime();
+            if (now - lastReport >= REPORT_INTERVAL && !sessions.isEmpty()) {
+                for (Session session : sessions.values()) {
+                    if (session.getState() == Session.State.STREAMING) {
+                        System.out.println(session.report(now));
+                        if (!opts.has("no-stats")) System.out.println(session.statsLine(now));
+                    }
+                }
+                System.out.println(cache);
+                lastReport = now;
+            }
+        }
+    }
+
+    private void receiveAll() throws IOException {
+        while(true) {
+            in.clear();
+            SocketAddress from = channel.receive(in);
+            if (from == null) break;
+            in.flip();
+            if (in.remaining() < 4) continue;
+
+            int code = in.getInt(0);
+            long now = System.nanoTime();
+            Session session = sessions.get(from);
+
+            if (code == Protocol.REQUEST) {
+                in.position(4);
+                // Solicitud repetida de una sesión activa o en sondeo: se ignora
+                if (session == null && !probes.containsKey(from)) {
+                    try {
+                        handleRequest(from, Protocol.decodeRequest(in), now);
+                    } catch (Exception e) {
+                        System.out.println("Request from " + from + " dropped: " + e);
+                    }
+                }
+            }
+            else if (code == Protocol.PROBE_ACK) {
+                PendingProbe pending = probes.get(from);
+                if (pending != null && in.remaining() >= 8) pending.probe.onProbeAck(in.getInt(4));
+            }
+            else if (session != null) {
+                try {
+                    session.onAck(in, now);
+                } catch (Exception e) {
+                    sessions.remove(from);
+                    drop(session, e);
+                }
+            }
+        }
+    }
+
+    // Sesión que falló: se descarta sola y se suelta su canción de la caché
+    private void drop(Session session, Exception e) throws IOException {
+        System.out.println("Session " + session.getAddress() + " dropped: " + e);
+        cache.release(session.getSong());
+    }
+
+    private void handleRequest(SocketAddress client, Protocol.Request request, long now) throws IOException {
+        if (request == null) {
+            sendControl(Protocol.encodeError("Malformed request"), client);
+            return;
+        }
+
+        Path path = songPath(request.song);
+        if (path == null) {
+            System.out.println("Rejected request from " + client + ": '" + request.song + "' not found");
+            sendControl(Protocol.encodeError("Song not found: " + request.song), client);
+            return;
+        }
+
+        // Payload negociado: lo que acepta el receptor, sin pasar del máximo del servidor
+        int payload = request.maxPayload > 0 ? Math.min(request.maxPayload, maxPayload) : payloadSize;
+        if (request.probe && client instanceof InetSocketAddress) {
+            int limit = Math.min(Protocol.DATA_HEADER + payload, MtuProbe.localLimit((InetSocketAddress)client));
+            probes.put(client, new PendingProbe(request, payload, new MtuProbe(limit)));
+            return;
+        }
+        startSession(client, request, payload, now);
+    }
+
+    // Cabecera más grande que se enviará: con FEC, la paridad tiene que caber en el datagrama sondeado
+    private static int headerSize(Protocol.Request request) {
+        return fecBlock(request) > 0 ? Protocol.PARITY_HEADER : Protocol.DATA_HEADER;
+    }
+
+    // K pedido por el receptor, o 0 si no pidió FEC o el valor no es válido (se atiende sin FEC)
+    private static int fecBlock(Protocol.Request request) {
+        return request.fec >= 2 && request.fec <= FecEncoder.MAX_K ? request.fec : 0;
+    }
+
+    private void startSession(SocketAddress client, Protocol.Request request, int payload, long now) throws IOException {
+        Path path = songPath(request.song);
+        if (path == null) return;
+
+        MappedSong song = cache.acquire(path, payload);
+        try {
+            startSession(client, request, song, payload, now);
+        } catch (Exception e) {
+            sessions.remove(client);
+            cache.release(song);
+            throw e;
+        }
+    }
+
+    private void startSession(SocketAddress client, Protocol.Request request, MappedSong song, int payload, long now) throws IOException {
+        // Reanudación: se sigue desde el primer paquete incompleto si el archivo es el mismo
+        int fileId = request.resumeOffset >= 0 ? song.fileId() : 0;
+        int firstSeq = request.resumeOffset > 0 && request.fileId == fileId
+                ? Math.min(request.resumeOffset / payload, song.packetCount())
+                : 0;
+        WindowSender sender = new WindowSender(request.mode, song.packetCount(),
+                Server.newCongestionControl(opts), Server.newRttEstimator(opts), firstSeq);
+        Session session = new Session(client, request.song, song, sender, transportTo(client), now);
+        int fec = fecBlock(request);
+        if (fec > 0) session.setFec(new FecEncoder(fec, payload));
+        session.setPacketLog(!opts.has("no-packet-log"));
+        session.setStatsLines(!opts.has("no-stats"));
+        sender.setPacer(Server.newPacer(opts, song, now));
+        sessions.put(client, session);
+        if (request.maxPayload > 0 || request.probe || request.resumeOffset >= 0) {
+            session.setStart(Protocol.encodeStart(payload, firstSeq, fileId), firstSeq, now);
+        }
+        System.out.println("Session " + client + " started: '" + request.song + "' (" + request.mode
+                + (request.sack ? "+SACK" : "") + (fec > 0 ? "+FEC/" + fec : "") + ", payload " + payload + ", "
+                + (sender.getPacer() != null ? sender.getPacer() + ", " : "")
+                + (firstSeq > 0 ? "resuming at seq " + firstSeq + " of " : "")
+                + song.packetCount() + " packets). Active sessions: " + sessions.size() + ", " + cache);
+    }
+
+    // Ruta dentro del directorio de canciones, o null si no existe o intenta salir de él
+    private Path songPath(String name) {
+        try {
+            Path path = songsDir.resolve(name).normalize();
+            return path.startsWith(songsDir) && Files.isRegularFile(path) ? path : null;
+        } catch (InvalidPathException e) {
+            return null;   // Por ejemplo un NUL en el nombre
+        }
+    }
+
+    // Canal compartido sin conectar: no hay escritura gather, se arma el datagrama en un buffer directo
+    private Session.Transport transportTo(SocketAddress client) {
+        return (header, payload) -> {
+            out.clear();
+            out.put(header);
+            if (payload != null) out.put(payload);
+            out.flip();
+            channel.send(out, client);
+        };
+    }
+
+    private void sendControl(ByteBuffer packet, SocketAddress to) throws IOException {
+        channel.send(packet, to);
+    }
+
+    private static final class PendingProbe {
+        final Protocol.Request request;
+        final int payload;
+        final MtuProbe probe;
+
+        PendingProbe(Protocol.Request request, int payload, MtuProbe probe) {
+            this.request = request;
+            this.payload = payload;
+            this.probe = probe;
+        }
+    }
+
+    public static Path defaultSongsDir() {
+        return Paths.get("serverGUI", "resources", "songs");
+    }
+}
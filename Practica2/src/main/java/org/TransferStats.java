@@ -0,0 +1,187 @@
+package org;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+// Telemetría de una transferencia. La escribe el hilo de envío y se puede leer desde cualquier
+// otro sin bloquearlo: contadores LongAdder e histogramas con buckets atómicos.
+// toJson() produce la línea periódica que lee la GUI (CMD:STATS:{...} en stdout).
+public class TransferStats {
+    private final LongAdder packetsSent = new LongAdder();
+    private final LongAdder bytesSent = new LongAdder();
+    private final LongAdder retransmitted = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder acks = new LongAdder();
+    private final AtomicLong ackedBytes = new AtomicLong();
+    private final Histogram rtt = new Histogram();      // Microseconds
+    private final Histogram window = new Histogram();   // Paquetes
+    private final long startedAt;
+
+    // Solo las usa quien arma los reportes (goodput del último intervalo)
+    private long lastReportAt;
+    private long lastReportBytes;
+
+    public TransferStats(long now) {
+        this.startedAt = now;
+        this.lastReportAt = now;
+    }
+
+    // Un paquete de datos; 'bytes' es el datagrama de datos más, en el primer envío del último
+    // paquete de un bloque FEC, la paridad que sale detrás de él
+    public void onSent(int bytes) {
+        packetsSent.increment();
+        bytesSent.add(bytes);
+    }
+
+    public void onRetransmit(int packets) {
+        retransmitted.add(packets);
+    }
+
+    public void onTimeout() {
+        timeouts.increment();
+    }
+
+    public void onAck(int window) {
+        acks.increment();
+        this.window.record(window);
+    }
+
+    public void onRttSample(long nanos) {
+        rtt.record(nanos / 1000);
+    }
+
+    public void setAckedBytes(long bytes) {
+        ackedBytes.set(bytes);
+    }
+
+    public long getPacketsSent() {
+        return packetsSent.sum();
+    }
+
+    public long getRetransmitted() {
+        return retransmitted.sum();
+    }
+
+    public long getTimeouts() {
+        return timeouts.sum();
+    }
+
+    public Histogram getRtt() {
+        return rtt;
+    }
+
+    public Histogram getWindow() {
+        return window;
+    }
+
+    // {"session":...,"song":...,"sent":...,"rttMs":{...},"window":{...},"goodputKBps":...}
+    public String toJson(String session, String song, long totalBytes, long now) {
+        long acked = ackedBytes.get();
+        double interval = Math.max(1e-9, (now - lastReportAt) / 1e9);
+        double elapsed = Math.max(1e-9, (now - startedAt) / 1e9);
+        double goodput = (acked - lastReportBytes) / 1024.0 / interval;
+        lastReportAt = now;
+        lastReportBytes = acked;
+
+        StringBuilder json = new StringBuilder(320);
+        json.append('{');
+        json.append("\"session\":").append(quote(session));
+        json.append(",\"song\":").append(quote(song));
+        json.append(",\"elapsed\":").append(format(elapsed));
+        json.append(",\"bytes\":").append(acked);
+        json.append(",\"total\":").append(totalBytes);
+        json.append(",\"sent\":").append(packetsSent.sum());
+        json.append(",\"sentBytes\":").append(bytesSent.sum());
+        json.append(",\"retransmitted\":").append(retransmitted.sum());
+        json.append(",\"timeouts\":").append(timeouts.sum());
+        json.append(",\"acks\":").append(acks.sum());
+        json.append(",\"goodputKBps\":").append(format(goodput));
+        json.append(",\"avgGoodputKBps\":").append(format(acked / 1024.0 / elapsed));
+        json.append(",\"rttMs\":{\"p50\":").append(format(rtt.percentile(0.5) / 1000.0))
+            .append(",\"p99\":").append(format(rtt.percentile(0.99) / 1000.0))
+            .append(",\"max\":").append(format(rtt.max() / 1000.0)).append('}');
+        json.append(",\"window\":{\"p50\":").append(window.percentile(0.5))
+            .append(",\"max\":").append(window.max()).append('}');
+        json.append('}');
+        return json.toString();
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.3f", value);
+    }
+
+    private static String quote(String value) {
+        StringBuilder out = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':  out.append("\\\""); break;
+                case '\\': out.append("\\\\"); break;
+                case '\n': out.append("\\n"); break;
+                case '\r': out.append("\\r"); break;
+                case '\t': out.append("\\t"); break;
+                default:
+                    if (c < 0x20) out.append(String.format("\\u%04x", (int)c));
+                    else out.append(c);
+            }
+        }
+        return out.append('"').toString();
+    }
+
+    // Histograma logarítmico de valores >= 0: cada potencia de 2 se parte en 8 buckets lineales,
+    // así los percentiles tienen un error relativo de a lo sumo 1/8
+    public static final class Histogram {
+        private static final int SUB_BITS = 3;
+        private static final int SUB = 1 << SUB_BITS;
+        private static final int BUCKETS = SUB * (64 - SUB_BITS);
+
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+        private final LongAdder total = new LongAdder();
+        private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+        public void record(long value) {
+            if (value < 0) value = 0;
+            counts.incrementAndGet(index(value));
+            total.increment();
+            max.accumulate(value);
+        }
+
+        public long count() {
+            return total.sum();
+        }
+
+        public long max() {
+            return max.get();
+        }
+
+        // Cota superior del bucket donde cae el percentil q (0..1); 0 si no hay muestras
+        public long percentile(double q) {
+            long n = total.sum();
+            if (n == 0) return 0;
+            long rank = Math.max(1, (long)Math.ceil(q * n));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts.get(i);
+                if (seen >= rank) return Math.min(max.get(), lowerBound(i + 1) - 1);
+            }
+            return max.get();
+        }
+
+        private static int index(long value) {
+            if (value < SUB) return (int)value;
+            int exp = 63 - Long.numberOfLeadingZeros(value);
+            int sub = (int)(value >>> (exp - SUB_BITS)) & (SUB - 1);
+            return (exp - SUB_BITS + 1) * SUB + sub;
+        }
+
+        private static long lowerBound(int index) {
+            if (index < SUB) return index;
+            int exp = index / SUB + SUB_BITS - 1;
+            if (exp >= 63) return Long.MAX_VALUE;
+            return (long)(SUB + index % SUB) << (exp - SUB_BITS);
+        }
+    }
+}
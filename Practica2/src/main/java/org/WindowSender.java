@@ -0,0 +1,315 @@
+package org;
+
+import java.io.IOException;
+
+// Ventana deslizante del emisor.
+//  - GBN: un solo temporizador sobre base; al expirar se reenvía toda la ventana.
+//  - SR:  un temporizador por paquete; solo se reenvían los paquetes vencidos.
+// El tamaño de la ventana lo decide el CongestionControl a partir de ACKs y pérdidas,
+// y el timeout de retransmisión el RttEstimator. Con un Pacer, además, los paquetes nuevos
+// salen al ritmo objetivo en vez de en ráfaga. Los tiempos están en nanosegundos.
+public class WindowSender {
+    public enum Mode {
+        GBN, SR;
+
+        public static Mode parse(String value) {
+            if (value == null) return GBN;
+            switch (value.trim().toLowerCase()) {
+                case "sr":
+                case "selective":
+                case "selective-repeat":
+                    return SR;
+                default:
+                    return GBN;
+            }
+        }
+    }
+
+    // Destino de los paquetes: arma y envía el datagrama del número de secuencia dado
+    public interface PacketSink {
+        void send(int seq) throws IOException;
+    }
+
+    private final Mode mode;
+    private final int totalPackets;
+    private final CongestionControl cc;
+    private final RttEstimator rtt;
+    private Pacer pacer;              // null = sin pacing
+    private boolean packetLog = true; // Una línea en stderr por paquete reenviado (--no-packet-log)
+
+    private final long[] sentAt;      // Instante del último envío de cada paquete
+    private final boolean[] retransmitted;   // Regla de Karn: sin muestras de RTT para estos
+    private final boolean[] acked;    // Solo SR: paquetes confirmados individualmente
+    private int base = 0;
+    private int nextSeq = 0;
+    private int highestSent = -1;
+    private long timerStart;          // Solo GBN: temporizador del paquete base
+    private final TransferStats stats = new TransferStats(System.nanoTime());
+
+    // Detección de pérdidas sin esperar al timeout (fast retransmit)
+    private static final int DUP_ACK_THRESHOLD = 3;
+    private int dupAcks = 0;
+    private int recoverSeq = -1;      // No se reacciona dos veces a la misma ventana perdida
+    private int fastRetransmit = -1;  // Solo SR: paquete pendiente de reenvío inmediato
+    private int sackHighest = -1;     // Solo SR con SACK: mayor secuencia confirmada selectivamente
+
+    public WindowSender(Mode mode, int totalPackets, CongestionControl cc, RttEstimator rtt) {
+        this(mode, totalPackets, cc, rtt, 0);
+    }
+
+    // firstSeq > 0: transferencia reanudada, el receptor ya tiene los paquetes anteriores
+    public WindowSender(Mode mode, int totalPackets, CongestionControl cc, RttEstimator rtt, int firstSeq) {
+        this.mode = mode;
+        this.totalPackets = totalPackets;
+        this.cc = cc;
+        this.rtt = rtt;
+        this.sentAt = new long[totalPackets];
+        this.retransmitted = new boolean[totalPackets];
+        this.acked = mode == Mode.SR ? new boolean[totalPackets] : null;
+        this.base = firstSeq;
+        this.nextSeq = firstSeq;
+        this.highestSent = firstSeq - 1;
+    }
+
+    // Envía los paquetes que caben en la ventana. Lo ya enviado antes de un retroceso de nextSeq
+    // (GBN: timeout o triple ACK duplicado) es retransmisión y sale ya, como en SR; los paquetes
+    // nuevos solo si el pacer los deja salir. El emisor cobra todo al pacer igual.
+    public void sendWindow(PacketSink out, long now) throws IOException {
+        while(canSendNew() && nextSeq <= highestSent) sendNext(out, now);
+        while(canSendNew() && (pacer == null || pacer.isReady(now))) sendNext(out, now);
+    }
+
+    private void sendNext(PacketSink out, long now) throws IOException {
+        out.send(nextSeq);
+        sentAt[nextSeq] = now;
+        if (nextSeq <= highestSent) retransmitted[nextSeq] = true;
+        highestSent = Math.max(highestSent, nextSeq);
+        if (nextSeq == base) timerStart = now;
+        nextSeq++;
+    }
+
+    public void onAck(int ackNum, long now) {
+        if (mode == Mode.GBN && ackNum == base - 1 && base < nextSeq) {
+            // ACK duplicado: el receptor sigue esperando base
+            if (++dupAcks == DUP_ACK_THRESHOLD && base > recoverSeq) {
+                System.out.println("Triple duplicate ACK! Resending window from " + base);
+                cc.onLoss();
+                recoverSeq = nextSeq - 1;
+                stats.onRetransmit(nextSeq - base);
+                nextSeq = base;       // sendWindow reenvía la ventana
+                timerStart = now;
+            }
+            return;
+        }
+        if (ackNum < base || ackNum > highestSent) return;   // ACK viejo o de algo nunca enviado
+
+        if (mode == Mode.GBN) {
+            // ACK acumulativo: todo hasta ackNum llegó en orden. Puede confirmar paquetes del
+            // envío anterior a un retroceso de nextSeq (timeout), así que nextSeq también avanza.
+            sampleRtt(ackNum, now);
+            cc.onAck(ackNum + 1 - base);
+            stats.onAck(cc.window());
+            base = ackNum + 1;
+            nextSeq = Math.max(nextSeq, base);
+            timerStart = now;
+            dupAcks = 0;
+        } else {
+            // ACK individual: se marca y se desliza la ventana sobre los confirmados
+            if (acked[ackNum]) return;
+            acked[ackNum] = true;
+            sampleRtt(ackNum, now);
+            cc.onAck(1);
+            stats.onAck(cc.window());
+            while(base < nextSeq && acked[base]) base++;
+
+            // Llegan ACKs posteriores a un hueco: base probablemente se perdió
+            if (base < nextSeq && ackNum >= base + DUP_ACK_THRESHOLD && base > recoverSeq) {
+                cc.onLoss();
+                recoverSeq = nextSeq - 1;
+                fastRetransmit = base;
+            }
+        }
+    }
+
+    // ACK extendido: acumulativo hasta cumAck + bitmap de los 64 paquetes a partir de cumAck + 2
+    public void onSack(int cumAck, long bitmap, long now) {
+        if (mode == Mode.GBN) {
+            // Go-Back-N no guarda estado por paquete: solo sirve la parte acumulativa
+            onAck(cumAck, now);
+            return;
+        }
+
+        int newest = -1;
+        int newlyAcked = 0;
+        for(int seq = Math.max(base, 0); seq <= Math.min(cumAck, highestSent); seq++) {
+            if (!acked[seq]) {
+                acked[seq] = true;
+                newlyAcked++;
+                newest = seq;
+            }
+        }
+        for(int i = 0; i < Protocol.SACK_BITS && bitmap != 0; i++) {
+            if ((bitmap & (1L << i)) == 0) continue;
+            int seq = cumAck + 2 + i;
+            if (seq < base || seq > highestSent) continue;
+            if (!acked[seq]) {
+                acked[seq] = true;
+                newlyAcked++;
+                newest = seq;
+            }
+            sackHighest = Math.max(sackHighest, seq);
+        }
+        if (newlyAcked == 0) return;
+
+        // La muestra sale del paquete más reciente: los demás pueden llevar tiempo confirmados
+        sampleRtt(newest, now);
+        cc.onAck(newlyAcked);
+        stats.onAck(cc.window());
+        while(base < nextSeq && acked[base]) base++;
+    }
+
+    private void sampleRtt(int seq, long now) {
+        if (retransmitted[seq]) return;
+        rtt.onSample(now - sentAt[seq]);
+        stats.onRttSample(now - sentAt[seq]);
+    }
+
+    private boolean canSendNew() {
+        return nextSeq < base + cc.window() && nextSeq < totalPackets;
+    }
+
+    // Nanosegundos hasta que vence el próximo temporizador, o hasta que el pacer deje salir
+    // el siguiente paquete si la ventana tiene lugar
+    public long nextTimeout(long now) {
+        long timeout = retransmitTimeout(now);
+        if (pacer != null && canSendNew()) {
+            timeout = Math.min(timeout, pacer.delay(now));
+        }
+        return timeout;
+    }
+
+    private long retransmitTimeout(long now) {
+        long timeout = rtt.rto();
+        if (base >= nextSeq) return timeout;
+
+        if (mode == Mode.GBN) {
+            return timerStart + timeout - now;
+        }
+
+        long earliest = Long.MAX_VALUE;
+        for(int seq = base; seq < nextSeq; seq++) {
+            if (!acked[seq]) earliest = Math.min(earliest, sentAt[seq] + timeout);
+        }
+        return earliest - now;
+    }
+
+    // Reenvía lo que haya vencido según el modo
+    public void retransmitExpired(PacketSink out, long now) throws IOException {
+        if (base >= nextSeq) return;
+        long timeout = rtt.rto();
+
+        if (mode == Mode.GBN) {
+            if (now - timerStart >= timeout) {
+                System.out.println("Timeout! Resending window from " + base);
+                stats.onTimeout();
+                rtt.onTimeout();
+                cc.onTimeout();
+                recoverSeq = nextSeq - 1;
+                dupAcks = 0;
+                stats.onRetransmit(nextSeq - base);
+                nextSeq = base;
+                sendWindow(out, now);
+            }
+            return;
+        }
+
+        if (fastRetransmit >= base && !acked[fastRetransmit]) {
+            if (packetLog) System.err.println("Fast retransmit seq " + fastRetransmit);
+            out.send(fastRetransmit);
+            sentAt[fastRetransmit] = now;
+            retransmitted[fastRetransmit] = true;
+            stats.onRetransmit(1);
+        }
+        fastRetransmit = -1;
+
+        // SACK: se reenvían solo los huecos con al menos DUP_ACK_THRESHOLD paquetes confirmados
+        // por encima, y como mucho una vez por RTT cada uno
+        boolean lossSignaled = false;
+        for(int seq = base; seq <= sackHighest - DUP_ACK_THRESHOLD && seq < nextSeq; seq++) {
+            if (acked[seq] || now - sentAt[seq] < rtt.getSrtt()) continue;
+            if (!lossSignaled && seq > recoverSeq) {
+                cc.onLoss();
+                recoverSeq = nextSeq - 1;
+            }
+            lossSignaled = true;
+            if (packetLog) System.err.println("SACK hole, resending seq " + seq);
+            out.send(seq);
+            sentAt[seq] = now;
+            retransmitted[seq] = true;
+            stats.onRetransmit(1);
+        }
+
+        boolean timedOut = false;
+        int resent = 0;
+        for(int seq = base; seq < nextSeq; seq++) {
+            if (!acked[seq] && now - sentAt[seq] >= timeout) {
+                if (!timedOut) {
+                    // Una sola reducción de ventana y un solo backoff por ronda de timeouts
+                    stats.onTimeout();
+                    rtt.onTimeout();
+                    cc.onTimeout();
+                    recoverSeq = nextSeq - 1;
+                    timedOut = true;
+                }
+                if (packetLog) System.err.println("Timeout! Resending seq " + seq);
+                out.send(seq);
+                sentAt[seq] = now;
+                retransmitted[seq] = true;
+                stats.onRetransmit(1);
+                resent++;
+            }
+        }
+        // Una línea por ronda, como en GBN; el detalle por paquete va al log de paquetes
+        if (timedOut) System.out.println("Timeout! Resending " + resent + " packets from " + base);
+    }
+
+    public void setPacketLog(boolean packetLog) {
+        this.packetLog = packetLog;
+    }
+
+    public void setPacer(Pacer pacer) {
+        this.pacer = pacer;
+    }
+
+    public Pacer getPacer() {
+        return pacer;
+    }
+
+    public boolean isDone() {
+        return base >= totalPackets;
+    }
+
+    public int getBase() {
+        return base;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public CongestionControl getCongestionControl() {
+        return cc;
+    }
+
+    public RttEstimator getRttEstimator() {
+        return rtt;
+    }
+
+    public int getRetransmissions() {
+        return (int)stats.getRetransmitted();
+    }
+
+    public TransferStats getStats() {
+        return stats;
+    }
+}
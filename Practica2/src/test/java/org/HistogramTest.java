@@ -0,0 +1,84 @@
+package org;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Percentiles de TransferStats.Histogram: exactos por debajo de 8 y con error relativo
+ * de a lo más 1/8 (3 bits de sub-bucket) por encima.
+ */
+public class HistogramTest
+    extends TestCase
+{
+    public HistogramTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( HistogramTest.class );
+    }
+
+    // El percentil es la cota superior del bucket: nunca por debajo del valor real ni a más de 1/8 de él
+    private static void assertWithinBound( long expected, long actual )
+    {
+        assertTrue( "percentile " + actual + " below " + expected, actual >= expected );
+        assertTrue( "percentile " + actual + " too far above " + expected, actual - expected <= expected / 8 );
+    }
+
+    public void testEmpty()
+    {
+        TransferStats.Histogram h = new TransferStats.Histogram();
+        assertEquals( 0, h.count() );
+        assertEquals( 0, h.max() );
+        assertEquals( 0, h.percentile( 0.5 ) );
+    }
+
+    public void testSmallValuesAreExact()
+    {
+        TransferStats.Histogram h = new TransferStats.Histogram();
+        for ( long v = 0; v < 8; v++ ) h.record( v );
+        assertEquals( 8, h.count() );
+        assertEquals( 7, h.max() );
+        assertEquals( 0, h.percentile( 0.0 ) );
+        assertEquals( 3, h.percentile( 0.5 ) );
+        assertEquals( 7, h.percentile( 1.0 ) );
+    }
+
+    public void testPercentilesOfUniformRange()
+    {
+        TransferStats.Histogram h = new TransferStats.Histogram();
+        for ( long v = 1; v <= 100_000; v++ ) h.record( v );
+        assertEquals( 100_000, h.count() );
+        assertEquals( 100_000, h.max() );
+        assertWithinBound( 50_000, h.percentile( 0.5 ) );
+        assertWithinBound( 90_000, h.percentile( 0.9 ) );
+        assertWithinBound( 99_000, h.percentile( 0.99 ) );
+        assertEquals( 100_000, h.percentile( 1.0 ) );   // Acotado por el máximo
+    }
+
+    public void testEveryValueWithinBound()
+    {
+        long[] values = { 8, 9, 15, 16, 17, 100, 1023, 1024, 1025, 123_456_789L, 1L << 40, Long.MAX_VALUE / 3 };
+        for ( long v : values ) {
+            TransferStats.Histogram h = new TransferStats.Histogram();
+            h.record( v );
+            h.record( Long.MAX_VALUE );   // Para que el máximo no recorte el percentil
+            assertWithinBound( v, h.percentile( 0.5 ) );
+        }
+    }
+
+    public void testMaxAndNegatives()
+    {
+        TransferStats.Histogram h = new TransferStats.Histogram();
+        h.record( -5 );
+        h.record( 300 );
+        h.record( 12 );
+        assertEquals( 3, h.count() );
+        assertEquals( 300, h.max() );
+        assertEquals( 0, h.percentile( 0.1 ) );   // Los negativos cuentan como 0
+        assertEquals( 300, h.percentile( 1.0 ) );
+    }
+}
@@ -51,6 +51,7 @@ const CMD_MAP = {
   'CMD:ROOMS:': 'rooms-updated',
   'CMD:MYROOMS:': 'myrooms-updated',
   'CMD:USERS:': 'users-updated',
+  'CMD:PRESENCE:': 'presence-updated',
   'CMD:CONNECTED:': 'connection-success',
   'CMD:STATUS:': 'connection-status',
   'CMD:MSG:': 'message-received',
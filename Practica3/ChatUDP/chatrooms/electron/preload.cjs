@@ -37,6 +37,12 @@ contextBridge.exposeInMainWorld('electronAPI', {
     return () => ipcRenderer.removeListener('myrooms-updated', subscription);
   },
 
+  onPresenceUpdated: (callback) => {
+    const subscription = (_event, value) => callback(value);
+    ipcRenderer.on('presence-updated', subscription);
+    return () => ipcRenderer.removeListener('presence-updated', subscription);
+  },
+
   onConnectionSuccess: (callback) => {
     const subscription = (_event) => callback();
     ipcRenderer.on('connection-success', subscription);
@@ -1,9 +1,9 @@
-import React, { useState, useEffect } from 'react';
+import React, { useState, useEffect, useRef } from 'react';
 import LoginView from './components/LoginView';
 import Sidebar from './components/Sidebar';
 import ChatArea from './components/ChatArea';
 import UserList from './components/UserList';
-import type { Room, User, ConnectionStatusData, Message } from './types';
+import type { Room, User, ConnectionStatusData, Message, PresenceEvent } from './types';
 
 const App: React.FC = () => {
   const [username, setUsername] = useState<string>('');
@@ -17,6 +17,9 @@ const App: React.FC = () => {
   const [connectionStatus, setConnectionStatus] = useState<ConnectionStatusData | null>(null);
   const [messages, setMessages] = useState<Message[]>([]);
   const [viewMode, setViewMode] = useState<'all' | 'mine' | 'dm'>('mine');
+  const activeRoomRef = useRef<string>(activeRoom);   // Para los listeners, que no se recrean al cambiar de sala
+
+  useEffect(() => { activeRoomRef.current = activeRoom; }, [activeRoom]);
 
   // Configuración de listeners (puente js-java)
   useEffect(() => {
@@ -57,6 +60,28 @@ const App: React.FC = () => {
       setUserlist(newUserlist);
     }); 
 
+    // Delta de presencia: CMD:PRESENCE
+    const removePresenceListener = window.electronAPI.onPresenceUpdated((event: PresenceEvent) => {
+      const updateCount = (list: Room[]) => event.users === 0
+        ? list.filter(r => r.name !== event.room)
+        : list.map(r => r.name === event.room ? { ...r, users: event.users } : r);
+
+      setRooms(prev => prev.some(r => r.name === event.room) || event.users === 0
+        ? updateCount(prev)
+        : [...prev, { name: event.room, users: event.users }]);
+      setMyRooms(updateCount);
+
+      // La lista de usuarios es la de la sala activa
+      if (event.user && event.room === activeRoomRef.current) {
+        if (event.event === 'user-joined') {
+          setUserlist(prev => prev.some(u => u.name === event.user) ? prev
+            : [...prev, { id: prev.length, name: event.user!, status: 'online' }]);
+        } else if (event.event === 'user-left') {
+          setUserlist(prev => prev.filter(u => u.name !== event.user));
+        }
+      }
+    });
+
     // Programa java cerró
     const removeJavaStopListener = window.electronAPI.onJavaFinished(async (code) => {
       console.log(`El proceso Java terminó con código: ${code}`);
@@ -106,6 +131,7 @@ const App: React.FC = () => {
       removeStatusListener();
       removeRoomsListener();
       removeUsersListener();
+      removePresenceListener();
       removeJavaStopListener();
       removeMyRoomsListener();
       removeMsgListener();
@@ -1,4 +1,4 @@
-import type { ConnectionStatusData, Room, User, Message } from "./types";
+import type { ConnectionStatusData, Room, User, Message, PresenceEvent } from "./types";
 
 export {};
 
@@ -13,6 +13,7 @@ declare global {
       onRoomsUpdated: (callback: (rooms: Room[]) => void) => () => void;
       onMyRoomsUpdated:  (callback: (rooms: Room[]) => void) => () => void;
       onUserlistUpdated: (callback: (rooms: User[]) => void) => () => void;
+      onPresenceUpdated: (callback: (event: PresenceEvent) => void) => () => void;
       onConnectionSuccess:  (callback: () => void) => () => void;
       onConnectionStatus:  (callback: (data: ConnectionStatusData) => void) => () => void;
       onMessageReceived:  (callback: (msg: Message) => void) => () => void;
@@ -31,6 +31,16 @@ export interface User {
   status: 'online' | 'away';
 }
 
+// Delta de presencia (CMD:PRESENCE). El cliente Java ya verificó la versión:
+// llegan en orden y, si faltó alguno, en su lugar llegan las listas completas.
+export interface PresenceEvent {
+  v: number;
+  event: 'user-joined' | 'user-left' | 'room-count-changed';
+  room: string;
+  user?: string;   // Solo para los que están en la sala
+  users: number;   // Usuarios en la sala después del cambio (0 = sala eliminada)
+}
+
 export type ConnectionStatusData = {
   type: 'info' | 'error';
   message: string;
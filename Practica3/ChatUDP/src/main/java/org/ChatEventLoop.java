@@ -0,0 +1,187 @@
+package org;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Núcleo no bloqueante del servidor: un DatagramChannel con su Selector, atendido por un solo hilo.
+// Con varios loops cada uno tiene su propio canal en el mismo puerto (SO_REUSEPORT) y el kernel
+// reparte los clientes entre ellos; el estado de las salas ya es concurrente.
+// Los envíos nunca bloquean: si el kernel no tiene lugar el datagrama queda en la cola de su
+// destinatario y se vacía cuando el canal vuelve a ser escribible (OP_WRITE), por turnos entre
+// destinatarios para que uno lento no demore al resto.
+public class ChatEventLoop implements Runnable {
+    // Procesa un datagrama recibido; corre en el hilo del loop
+    public interface Handler {
+        void handle(ByteBuffer data, InetSocketAddress from);
+    }
+
+    private static final int BUFFER_SIZE = 65535;
+    private static final int PEER_QUEUE = 256;     // Datagramas pendientes por destinatario
+    private static final int READ_BUDGET = 64;     // Datagramas leídos antes de volver a atender escrituras
+    private static final long REPORT_INTERVAL = 10_000;   // Milliseconds
+    private static final ThreadLocal<ChatEventLoop> CURRENT = new ThreadLocal<>();
+
+    private final int id;
+    private final DatagramChannel channel;
+    private final Selector selector;
+    private final SelectionKey key;
+    private final Handler handler;
+    private final ByteBuffer in = ByteBuffer.allocate(BUFFER_SIZE);   // Heap: MessageCodec lee del array
+
+    private final Map<SocketAddress, ArrayDeque<ByteBuffer>> outbound = new HashMap<>();
+    private final ArrayDeque<SocketAddress> pending = new ArrayDeque<>();   // Destinatarios con cola no vacía
+
+    private long received = 0;
+    private long sent = 0;
+    private long queued = 0;
+    private long dropped = 0;
+
+    private ChatEventLoop(int id, DatagramChannel channel, Handler handler) throws IOException {
+        this.id = id;
+        this.channel = channel;
+        this.handler = handler;
+        channel.configureBlocking(false);
+        selector = Selector.open();
+        key = channel.register(selector, SelectionKey.OP_READ);
+    }
+
+    // Abre 'loops' canales en el puerto (uno si el sistema no tiene SO_REUSEPORT) y arranca un hilo por loop
+    public static List<ChatEventLoop> start(int port, int loops, Handler handler) throws IOException {
+        List<ChatEventLoop> list = new ArrayList<>();
+        for(int i = 0; i < loops; i++) {
+            DatagramChannel channel = DatagramChannel.open();
+            if (loops > 1) {
+                if (!channel.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT)) {
+                    if (i == 0) {
+                        System.out.println("SO_REUSEPORT not supported: using a single event loop");
+                        loops = 1;
+                    }
+                } else {
+                    channel.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+                }
+            }
+            channel.bind(new InetSocketAddress(port));
+            list.add(new ChatEventLoop(i, channel, handler));
+        }
+        for (ChatEventLoop loop : list) {
+            Thread thread = new Thread(loop, "event-loop-" + loop.id);
+            thread.start();
+        }
+        System.out.println("UDP Server started on port: " + port + " (" + list.size() + " event loops)");
+        return list;
+    }
+
+    // Loop del hilo actual, o null si el hilo no es de un loop
+    public static ChatEventLoop current() {
+        return CURRENT.get();
+    }
+
+    public DatagramChannel channel() {
+        return channel;
+    }
+
+    @Override
+    public void run() {
+        CURRENT.set(this);
+        long lastReport = System.currentTimeMillis();
+        long lastReceived = 0;
+        while(true) {
+            try {
+                if (selector.select(REPORT_INTERVAL) > 0) {
+                    selector.selectedKeys().clear();
+                    if (key.isWritable()) flush();
+                    if (key.isReadable()) read();
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            // Las métricas las escribe y las lee solo este hilo
+            long now = System.currentTimeMillis();
+            if (now - lastReport >= REPORT_INTERVAL) {
+                if (received != lastReceived) System.out.println(this);
+                lastReport = now;
+                lastReceived = received;
+            }
+        }
+    }
+
+    private void read() throws IOException {
+        for(int i = 0; i < READ_BUDGET; i++) {
+            in.clear();
+            SocketAddress from = channel.receive(in);
+            if (from == null) return;
+            in.flip();
+            received++;
+            try {
+                handler.handle(in, (InetSocketAddress)from);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    // Solo desde el hilo del loop. Un buffer de solo lectura se comparte tal cual (fanOut);
+    // cualquier otro se copia si hay que encolarlo, porque quien llama lo va a reutilizar.
+    public void send(ByteBuffer datagram, SocketAddress to) throws IOException {
+        ArrayDeque<ByteBuffer> queue = outbound.get(to);
+        if (queue == null || queue.isEmpty()) {
+            if (channel.send(datagram, to) > 0) {
+                sent++;
+                return;
+            }
+            if (queue == null) {
+                queue = new ArrayDeque<>();
+                outbound.put(to, queue);
+            }
+        }
+        if (queue.size() >= PEER_QUEUE) {
+            dropped++;   // Destinatario que no da abasto: se pierde lo más nuevo, como con UDP
+            return;
+        }
+        if (queue.isEmpty()) pending.add(to);
+        queue.add(datagram.isReadOnly() ? datagram : copy(datagram));
+        queued++;
+        key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+    }
+
+    // Un datagrama por destinatario y por turno, hasta que el kernel no acepte más
+    private void flush() throws IOException {
+        while(!pending.isEmpty()) {
+            SocketAddress to = pending.peek();
+            ArrayDeque<ByteBuffer> queue = outbound.get(to);
+            if (channel.send(queue.peek(), to) == 0) return;   // Sigue lleno: se espera otro OP_WRITE
+            sent++;
+            queue.poll();
+            pending.poll();
+            if (queue.isEmpty()) {
+                outbound.remove(to);
+            } else {
+                pending.add(to);
+            }
+        }
+        key.interestOps(SelectionKey.OP_READ);
+    }
+
+    private static ByteBuffer copy(ByteBuffer datagram) {
+        ByteBuffer copy = ByteBuffer.allocate(datagram.remaining());
+        copy.put(datagram.duplicate()).flip();
+        return copy;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Event loop %d: %d received, %d sent, %d queued, %d dropped, %d peers waiting",
+                id, received, sent, queued, dropped, pending.size());
+    }
+}
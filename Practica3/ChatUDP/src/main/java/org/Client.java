@@ -2,6 +2,7 @@ package org;
 
 import java.io.*;
 import java.net.*;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.util.Scanner;
 // mvn exec:java -Dexec.mainClass="org.Client"
@@ -146,9 +147,7 @@ public class Client{
                     socket.receive(packet);    // Blocking wait until a UDP packet is received
 
                     // Get packet data
-                    ByteArrayInputStream b = new ByteArrayInputStream(packet.getData());
-                    ObjectInputStream obj = new ObjectInputStream(b);
-                    Message msg = (Message)obj.readObject();
+                    Message msg = MessageCodec.decode(ByteBuffer.wrap(packet.getData(), 0, packet.getLength()));
 
                     showMessage(msg);
                 } catch (Exception e) {
@@ -178,12 +177,9 @@ public class Client{
     // Send a Message object as UDP packet
     private void sendMessage(Message msg){
         try {
-            ByteArrayOutputStream b = new ByteArrayOutputStream();
-            ObjectOutputStream obj = new ObjectOutputStream(b);
-            obj.writeObject(msg);
-            byte[] data = b.toByteArray();
-
-            DatagramPacket packet = new DatagramPacket(data, data.length, serverAddress, SERVER_PORT);
+            ByteBuffer out = MessageCodec.threadBuffer();
+            MessageCodec.encode(msg, out);
+            DatagramPacket packet = new DatagramPacket(out.array(), 0, out.position(), serverAddress, SERVER_PORT);
             socket.send(packet);
         } catch (IOException e) {
             e.printStackTrace();
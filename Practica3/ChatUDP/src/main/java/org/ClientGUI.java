@@ -1,16 +1,16 @@
 package org;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.net.DatagramPacket;
 import java.net.DatagramSocket;
 import java.net.InetAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
 import java.util.Map;
 import java.util.Scanner;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 // mvn exec:java -Dexec.mainClass="org.Client"
 public class ClientGUI{
@@ -24,6 +24,16 @@ public class ClientGUI{
     private String currentRoom = "General";
     private volatile boolean connected = false;
 
+    // Presencia: última versión aplicada (-1 = sin snapshot todavía). Solo el hilo receptor la usa.
+    // Mientras haya un resync pendiente se repite la petición cada RESYNC_INTERVAL hasta que llegue
+    // un snapshot de versión >= resyncVersion.
+    private static final long RESYNC_INTERVAL = 1000;   // Milliseconds
+    private static final Pattern PRESENCE_VERSION = Pattern.compile("\\{\"v\":(\\d+)");
+    private long presenceVersion = -1;
+    private long lastResync = 0;
+    private boolean resyncPending = false;
+    private long resyncVersion = 0;
+
     // {id, {idxChunk, data}}
     private final Map<String, java.util.Map<Integer, byte[]>> incomingFiles = new ConcurrentHashMap<>();
 
@@ -191,6 +201,12 @@ public class ClientGUI{
         @Override
         public void run(){
             byte[] buffer = new byte[BUFFER_SIZE];
+            try {
+                // Se despierta cada RESYNC_INTERVAL aunque no llegue nada, para reintentar el resync
+                socket.setSoTimeout((int)RESYNC_INTERVAL);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
 
             while (true) { 
                 try {
@@ -198,14 +214,15 @@ public class ClientGUI{
                     socket.receive(packet);    // Blocking wait until a UDP packet is received
 
                     // Get packet data
-                    ByteArrayInputStream b = new ByteArrayInputStream(packet.getData());
-                    ObjectInputStream obj = new ObjectInputStream(b);
-                    Message msg = (Message)obj.readObject();
+                    Message msg = MessageCodec.decode(ByteBuffer.wrap(packet.getData(), 0, packet.getLength()));
 
                     showMessage(msg);
+                } catch (SocketTimeoutException e) {
+                    // Nada que mostrar
                 } catch (Exception e) {
                     e.printStackTrace();
                 }
+                retryResync();
             }
         }
     }
@@ -215,6 +232,10 @@ public class ClientGUI{
             case START:
                 connected = true;
                 System.out.println("CMD:CONNECTED:{}");
+                requestSnapshot(0);
+                break;
+            case PRESENCE:
+                handlePresence(msg);
                 break;
             case TEXT: case LEAVE: case USERS: case JOIN: case DM:
                 System.out.println(msg.content);
@@ -227,15 +248,50 @@ public class ClientGUI{
         }
     }
 
+    // Deltas en orden de versión; si falta alguna se descartan hasta que llegue un snapshot.
+    // El snapshot trae las listas completas (CMD:ROOMS, CMD:MYROOMS, CMD:USERS) después de su versión.
+    private void handlePresence(Message msg) {
+        Matcher m = PRESENCE_VERSION.matcher(msg.content);
+        if (!m.find()) return;
+        long version = Long.parseLong(m.group(1));
+
+        if (msg.content.startsWith("CMD:SNAPSHOT:")) {
+            if (version < presenceVersion) return;   // Uno viejo que llegó tarde
+            presenceVersion = version;
+            if (version >= resyncVersion) resyncPending = false;
+            System.out.println(msg.content.substring(msg.content.indexOf('\n') + 1));
+            return;
+        }
+        if (presenceVersion >= 0 && version == presenceVersion + 1) {
+            presenceVersion = version;
+            System.out.println(msg.content);
+        } else if (version > presenceVersion) {
+            requestSnapshot(version);
+        }
+    }
+
+    // Marca que hace falta un snapshot de versión >= version y lo pide si ya pasó el intervalo
+    private void requestSnapshot(long version) {
+        resyncVersion = resyncPending ? Math.max(resyncVersion, version) : version;
+        resyncPending = true;
+        retryResync();
+    }
+
+    // Como mucho una petición por RESYNC_INTERVAL; se repite hasta que llegue el snapshot (UDP)
+    private void retryResync() {
+        if (!resyncPending) return;
+        long now = System.currentTimeMillis();
+        if (now - lastResync < RESYNC_INTERVAL) return;
+        lastResync = now;
+        sendMessage(new Message(Message.Type.PRESENCE, username, currentRoom, null));
+    }
+
     // Send a Message object as UDP packet
     private void sendMessage(Message msg){
         try {
-            ByteArrayOutputStream b = new ByteArrayOutputStream();
-            ObjectOutputStream obj = new ObjectOutputStream(b);
-            obj.writeObject(msg);
-            byte[] data = b.toByteArray();
-
-            DatagramPacket packet = new DatagramPacket(data, data.length, serverAddress, SERVER_PORT);
+            ByteBuffer out = MessageCodec.threadBuffer();
+            MessageCodec.encode(msg, out);
+            DatagramPacket packet = new DatagramPacket(out.array(), 0, out.position(), serverAddress, SERVER_PORT);
             socket.send(packet);
         } catch (IOException e) {
             e.printStackTrace();
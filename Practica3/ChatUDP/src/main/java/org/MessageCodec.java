@@ -0,0 +1,171 @@
+package org;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+// Formato binario de Message en un datagrama (en lugar de la serialización de Java):
+//   [byte versión][byte tipo][byte flags]
+//   [str sender][str room][str content][str receiver][str fileId]
+//   [int chunkIndex][int totalChunks][bytes data][bytes fileData]
+//   str:   [u16 largo, 0xFFFF = null][UTF-8]
+//   bytes: [int largo, -1 = null][bytes]
+// Un cliente viejo manda la serialización de Java, que empieza con 0xACED: se reconoce por eso.
+public final class MessageCodec {
+    public static final byte VERSION = 2;     // La 1 es la serialización de Java
+    public static final int MAX_DATAGRAM = 65507;
+
+    private static final int FLAG_PRIVATE = 1;
+    private static final int NULL_STRING = 0xFFFF;
+    private static final byte[] JAVA_SERIALIZATION = { (byte)0xAC, (byte)0xED };
+    private static final Message.Type[] TYPES = Message.Type.values();
+
+    private static final ThreadLocal<ByteBuffer> BUFFERS = ThreadLocal.withInitial(() -> ByteBuffer.allocate(MAX_DATAGRAM));
+
+    private MessageCodec() { }
+
+    // Datagrama con otra versión del protocolo; legacy = cliente con serialización de Java
+    public static class VersionException extends IOException {
+        private static final long serialVersionUID = 1L;
+        public final boolean legacy;
+
+        VersionException(String message, boolean legacy) {
+            super(message);
+            this.legacy = legacy;
+        }
+    }
+
+    // Buffer de envío del hilo actual, vacío
+    public static ByteBuffer threadBuffer() {
+        ByteBuffer buffer = BUFFERS.get();
+        buffer.clear();
+        return buffer;
+    }
+
+    // Escribe msg desde la posición actual de out
+    public static void encode(Message msg, ByteBuffer out) {
+        out.put(VERSION);
+        out.put((byte)msg.type.ordinal());
+        out.put((byte)(msg.isPrivate ? FLAG_PRIVATE : 0));
+        putString(out, msg.sender);
+        putString(out, msg.room);
+        putString(out, msg.content);
+        putString(out, msg.receiver);
+        putString(out, msg.fileId);
+        out.putInt(msg.chunkIndex);
+        out.putInt(msg.totalChunks);
+        putBytes(out, msg.data);
+        putBytes(out, msg.fileData);
+    }
+
+    // Bytes que ocupa msg codificado, para saber de antemano si cabe en MAX_DATAGRAM
+    public static int encodedSize(Message msg) {
+        return 3 + stringSize(msg.sender) + stringSize(msg.room) + stringSize(msg.content)
+                + stringSize(msg.receiver) + stringSize(msg.fileId) + 8 + bytesSize(msg.data) + bytesSize(msg.fileData);
+    }
+
+    // Copia propia del datagrama, para guardarlo o compartirlo entre envíos
+    public static byte[] toBytes(Message msg) {
+        ByteBuffer out = threadBuffer();
+        encode(msg, out);
+        return Arrays.copyOf(out.array(), out.position());
+    }
+
+    // Lee un Message desde la posición actual de in hasta su límite
+    public static Message decode(ByteBuffer in) throws IOException {
+        if (in.remaining() >= 2 && in.get(in.position()) == JAVA_SERIALIZATION[0] && in.get(in.position() + 1) == JAVA_SERIALIZATION[1]) {
+            throw new VersionException("Java-serialized message (old client)", true);
+        }
+        try {
+            byte version = in.get();
+            if (version != VERSION) throw new VersionException("Unsupported message version " + version, false);
+            int type = in.get() & 0xFF;
+            if (type >= TYPES.length) throw new IOException("Unknown message type " + type);
+            int flags = in.get();
+
+            Message msg = new Message(TYPES[type], null, null, null);
+            msg.isPrivate = (flags & FLAG_PRIVATE) != 0;
+            msg.sender = getString(in);
+            msg.room = getString(in);
+            msg.content = getString(in);
+            msg.receiver = getString(in);
+            msg.fileId = getString(in);
+            msg.chunkIndex = in.getInt();
+            msg.totalChunks = in.getInt();
+            msg.data = getBytes(in);
+            msg.fileData = getBytes(in);
+            return msg;
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated message", e);
+        }
+    }
+
+    // Respuesta para un cliente viejo, en el formato que entiende
+    public static byte[] legacyNotice(String text) {
+        try {
+            ByteArrayOutputStream b = new ByteArrayOutputStream();
+            ObjectOutputStream obj = new ObjectOutputStream(b);
+            obj.writeObject(new Message(Message.Type.TEXT, "Server", null, text));
+            obj.flush();
+            return b.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void putString(ByteBuffer out, String value) {
+        if (value == null) {
+            out.putShort((short)NULL_STRING);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length >= NULL_STRING) throw new IllegalArgumentException("String too long: " + bytes.length + " bytes");
+        out.putShort((short)bytes.length);
+        out.put(bytes);
+    }
+
+    private static int stringSize(String value) {
+        return 2 + (value == null ? 0 : value.getBytes(StandardCharsets.UTF_8).length);
+    }
+
+    private static String getString(ByteBuffer in) throws IOException {
+        int length = in.getShort() & 0xFFFF;
+        if (length == NULL_STRING) return null;
+        if (length > in.remaining()) throw new IOException("Truncated message");
+        if (!in.hasArray()) {
+            byte[] bytes = new byte[length];
+            in.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+        String value = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+        in.position(in.position() + length);
+        return value;
+    }
+
+    private static void putBytes(ByteBuffer out, byte[] value) {
+        if (value == null) {
+            out.putInt(-1);
+            return;
+        }
+        out.putInt(value.length);
+        out.put(value);
+    }
+
+    private static int bytesSize(byte[] value) {
+        return 4 + (value == null ? 0 : value.length);
+    }
+
+    private static byte[] getBytes(ByteBuffer in) throws IOException {
+        int length = in.getInt();
+        if (length < 0) return null;
+        if (length > in.remaining()) throw new IOException("Truncated message");
+        byte[] value = new byte[length];
+        in.get(value);
+        return value;
+    }
+}
@@ -0,0 +1,194 @@
+package org;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+// Despacho de datagramas entrantes hacia los handlers.
+// El hilo receptor recibe en paquetes de un pool fijo (no se asigna un buffer por datagrama) y los
+// pasa por una cola acotada a los workers: un pool fijo de hilos o, con Java 21+, un hilo virtual por
+// datagrama. Si no queda ningún paquete libre el servidor está saturado: el datagrama se descarta
+// o se contesta "busy" al remitente (--overload=drop|busy).
+//
+// Opciones: --workers=N|virtual (default: núcleos) --queue=1024 --overload=drop|busy
+public class PacketDispatcher {
+    public enum Overload { DROP, BUSY }
+
+    private static final int BUFFER_SIZE = 65535;
+    private static final int QUEUE = 1024;
+    private static final long REPORT_INTERVAL = 10;   // Seconds
+
+    private final DatagramSocket socket;
+    private final Consumer<DatagramPacket> handler;
+    private final BlockingQueue<DatagramPacket> pool;    // Paquetes libres
+    private final BlockingQueue<DatagramPacket> queue;   // Recibidos, esperando un worker
+    private final DatagramPacket overflow = new DatagramPacket(new byte[BUFFER_SIZE], BUFFER_SIZE);
+    private final Overload overload;
+    private final int workers;          // 0 = hilos virtuales
+    private final int packets;
+    private byte[] busyReply;
+
+    private final LongAdder received = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder busy = new LongAdder();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private volatile int maxDepth = 0;
+
+    public PacketDispatcher(DatagramSocket socket, Consumer<DatagramPacket> handler, String[] args) {
+        this.socket = socket;
+        this.handler = handler;
+        String workerArg = option(args, "workers", Integer.toString(Runtime.getRuntime().availableProcessors()));
+        this.workers = workerArg.equals("virtual") ? 0 : Math.max(1, Integer.parseInt(workerArg));
+        this.overload = Overload.valueOf(option(args, "overload", "drop").toUpperCase());
+        int capacity = Math.max(1, Integer.parseInt(option(args, "queue", Integer.toString(QUEUE))));
+
+        // Un paquete por lugar en la cola y por datagrama en proceso: sin paquetes libres la cola está llena
+        packets = capacity + (workers > 0 ? workers : 0);
+        pool = new ArrayBlockingQueue<>(packets);
+        queue = new ArrayBlockingQueue<>(packets);
+        for(int i = 0; i < packets; i++) {
+            pool.add(new DatagramPacket(new byte[BUFFER_SIZE], BUFFER_SIZE));
+        }
+    }
+
+    // Respuesta ya serializada para --overload=busy
+    public void setBusyReply(byte[] busyReply) {
+        this.busyReply = busyReply;
+    }
+
+    // Bucle del hilo receptor: no vuelve
+    public void run() {
+        startWorkers();
+        Thread reporter = new Thread(this::report, "dispatch-stats");
+        reporter.setDaemon(true);
+        reporter.start();
+        System.out.println("Dispatcher: " + (workers > 0 ? workers + " workers" : "virtual threads")
+                + ", " + packets + " pooled packets, overload " + overload.name().toLowerCase());
+
+        while(true) {
+            try {
+                DatagramPacket packet = pool.poll();
+                if (packet == null) {
+                    // Saturado: se vacía el socket igual para no atrasar a los que sí entran
+                    overflow.setLength(BUFFER_SIZE);
+                    socket.receive(overflow);
+                    received.increment();
+                    onOverload(overflow);
+                    continue;
+                }
+                packet.setLength(BUFFER_SIZE);
+                socket.receive(packet);       // Blocking wait until a UDP packet is received
+                received.increment();
+                queue.add(packet);             // Siempre hay lugar: la cola tiene tantos lugares como el pool
+                int depth = queue.size();
+                if (depth > maxDepth) maxDepth = depth;
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void onOverload(DatagramPacket packet) throws IOException {
+        if (overload == Overload.BUSY && busyReply != null) {
+            socket.send(new DatagramPacket(busyReply, busyReply.length, packet.getAddress(), packet.getPort()));
+            busy.increment();
+        } else {
+            dropped.increment();
+        }
+    }
+
+    private void startWorkers() {
+        if (workers > 0) {
+            for(int i = 0; i < workers; i++) {
+                Thread worker = new Thread(this::workerLoop, "worker-" + i);
+                worker.setDaemon(true);
+                worker.start();
+            }
+            return;
+        }
+        ExecutorService executor = newVirtualThreadExecutor();
+        Thread feeder = new Thread(() -> {
+            try {
+                while(true) {
+                    DatagramPacket packet = queue.take();
+                    executor.execute(() -> handle(packet));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "virtual-dispatch");
+        feeder.setDaemon(true);
+        feeder.start();
+    }
+
+    private void workerLoop() {
+        try {
+            while(true) handle(queue.take());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void handle(DatagramPacket packet) {
+        inFlight.incrementAndGet();
+        try {
+            handler.accept(packet);
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        } finally {
+            inFlight.decrementAndGet();
+            pool.add(packet);   // El handler ya no puede usar el paquete
+        }
+    }
+
+    // Executors.newVirtualThreadPerTaskExecutor() existe desde Java 21; el proyecto compila para 17
+    private ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService)Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            int threads = Runtime.getRuntime().availableProcessors();
+            System.out.println("Virtual threads need Java 21+; using " + threads + " platform threads");
+            return Executors.newFixedThreadPool(threads, task -> {
+                Thread thread = new Thread(task);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    private void report() {
+        long last = -1;
+        while(true) {
+            try {
+                TimeUnit.SECONDS.sleep(REPORT_INTERVAL);
+            } catch (InterruptedException e) {
+                return;
+            }
+            long now = received.sum();
+            if (now != last) System.out.println(this);
+            last = now;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Dispatcher: %d received, %d queued (max %d), %d in flight, %d dropped, %d busy replies",
+                received.sum(), queue.size(), maxDepth, inFlight.get(), dropped.sum(), busy.sum());
+    }
+
+    // --nombre=valor
+    static String option(String[] args, String name, String fallback) {
+        for (String arg : args) {
+            if (arg.startsWith("--" + name + "=")) return arg.substring(name.length() + 3);
+        }
+        return fallback;
+    }
+}
@@ -1,6 +1,7 @@
 package org;
 
 import java.net.*;
+import java.nio.ByteBuffer;
 import java.io.*;
 import java.nio.channels.DatagramChannel;
 import java.util.*;
@@ -10,61 +11,68 @@ import java.util.concurrent.ConcurrentHashMap;
 public class Server {
     private static final int PORT = 10000;
     private static final int BUFFER_SIZE = 65535;
+    private static final byte[] LEGACY_NOTICE = MessageCodec.legacyNotice("This client is too old for the server, please update it.");
 
     private static Map<String, Map<String, Client>> rooms = new ConcurrentHashMap<>();
-    private DatagramSocket socket;
+    private DatagramChannel channel;   // Difusiones: un buffer codificado una vez para todos
+    private DatagramSocket socket;     // El mismo canal, para recibir y para respuestas individuales
 
-    public Server() {
+    public Server(String[] args) {
         try{
-            socket = new DatagramSocket(PORT);
+            int loops = Integer.parseInt(PacketDispatcher.option(args, "loops", "0"));
+            if (loops > 0) {
+                // Núcleo NIO: los handlers corren en los event loops y sus envíos no bloquean
+                List<ChatEventLoop> list = ChatEventLoop.start(PORT, loops,
+                        (data, from) -> new PacketHandler(data, from.getAddress(), from.getPort()).run());
+                channel = list.get(0).channel();
+                return;
+            }
+            channel = DatagramChannel.open();
+            channel.bind(new InetSocketAddress(PORT));
+            socket = channel.socket();
             System.out.println("UDP Server started on port: " + PORT);
-            listen();
+            listen(args);
         } catch (Exception e) {
             e.printStackTrace();
         }
     }
 
-    private void listen() {
-        while(true){
-            try {
-                byte[] buffer = new byte[BUFFER_SIZE];
-                DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
-                socket.receive(packet);          // Blocking wait until a UDP packet is received
-
-                new Thread(new PacketHandler(socket, packet)).start();
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-        }
+    // Un pool de workers procesa los datagramas (ver PacketDispatcher para las opciones)
+    private void listen(String[] args) {
+        PacketDispatcher dispatcher = new PacketDispatcher(socket,
+                packet -> new PacketHandler(ByteBuffer.wrap(packet.getData(), 0, packet.getLength()), packet.getAddress(), packet.getPort()).run(), args);
+        dispatcher.setBusyReply(MessageCodec.toBytes(new Message(Message.Type.TEXT, "Server", null, "Server busy, try again.")));
+        dispatcher.run();
     }
 
     static class Client {
         InetAddress ip;
         int port;
-        public Client(InetAddress ip, int port) { this.ip = ip; this.port = port; }
+        InetSocketAddress address;
+        public Client(InetAddress ip, int port) { this.ip = ip; this.port = port; this.address = new InetSocketAddress(ip, port); }
     }
 
     // Process individual packets
     class PacketHandler implements Runnable{
-        DatagramSocket socket;
-        DatagramPacket packet;
+        ByteBuffer data;
+        InetAddress ip;
+        int port;
 
-        public PacketHandler(DatagramSocket s, DatagramPacket p) {
-            this.socket = s;
-            this.packet = p;
+        public PacketHandler(ByteBuffer data, InetAddress ip, int port) {
+            this.data = data;
+            this.ip = ip;
+            this.port = port;
         }
 
         @Override
         public void run() {
             try {
                 // Get packet data
-                ByteArrayInputStream b = new ByteArrayInputStream(packet.getData(), 0, packet.getLength());
-                ObjectInputStream obj = new ObjectInputStream(b);
-                Message msg = (Message)obj.readObject();
+                Message msg = MessageCodec.decode(data);
 
                 // Identify sender
-                InetAddress senderIP = packet.getAddress();
-                int senderPort = packet.getPort();
+                InetAddress senderIP = ip;
+                int senderPort = port;
 
                 switch(msg.type){
                     case JOIN:
@@ -88,6 +96,15 @@ public class Server {
                     default:
                         System.out.println("Unknown message. Try again!");
                 }
+            } catch (MessageCodec.VersionException e) {
+                System.out.println(e.getMessage() + " from " + ip + ":" + port);
+                if (e.legacy) {
+                    try {
+                        sendDatagram(ByteBuffer.wrap(LEGACY_NOTICE), new InetSocketAddress(ip, port));
+                    } catch (IOException io) {
+                        io.printStackTrace();
+                    }
+                }
             } catch (Exception e) {
                 e.printStackTrace();
             }
@@ -109,11 +126,7 @@ public class Server {
         Map<String, Client> users = rooms.get(msg.room);
         if(users == null) return;
 
-        users.forEach((username, data) -> {
-            if(!username.equals(msg.sender)) {
-                sendPacket(msg, data.ip, data.port);
-            }
-        });
+        fanOut(msg, addresses(users, msg.sender));
     }
 
     // Send list of users in the room
@@ -175,22 +188,49 @@ public class Server {
         }
     }
 
+    // Encode msg once and send the same bytes to every recipient.
+    // Each send gets its own view of the shared read-only buffer.
+    private void fanOut(Message msg, Collection<InetSocketAddress> recipients) {
+        ByteBuffer shared = ByteBuffer.wrap(MessageCodec.toBytes(msg)).asReadOnlyBuffer();
+        for (InetSocketAddress to : recipients) {
+            try {
+                sendDatagram(shared.duplicate(), to);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private static List<InetSocketAddress> addresses(Map<String, Client> users, String except) {
+        List<InetSocketAddress> list = new ArrayList<>(users.size());
+        users.forEach((username, client) -> {
+            if (!username.equals(except)) list.add(client.address);
+        });
+        return list;
+    }
+
     // Send a Message object as UDP packet
     private void sendPacket(Message msg, InetAddress ip, int port) {
         try {
-            ByteArrayOutputStream b = new ByteArrayOutputStream();
-            ObjectOutputStream obj = new ObjectOutputStream(b);
-            obj.writeObject(msg);
-            byte[] data = b.toByteArray();
-
-            DatagramPacket newPacket = new DatagramPacket(data, data.length, ip, port);
-            socket.send(newPacket);
+            ByteBuffer out = MessageCodec.threadBuffer();
+            MessageCodec.encode(msg, out);
+            sendDatagram(out.flip(), new InetSocketAddress(ip, port));
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
+    // In an event loop the datagram goes through its per-peer queue; otherwise a blocking send
+    private void sendDatagram(ByteBuffer datagram, InetSocketAddress to) throws IOException {
+        ChatEventLoop loop = ChatEventLoop.current();
+        if (loop != null) {
+            loop.send(datagram, to);
+        } else {
+            channel.send(datagram, to);
+        }
+    }
+
     public static void main(String[] args) {
-        Server server = new Server();
+        Server server = new Server(args);
     }
 }
\ No newline at end of file
@@ -1,16 +1,18 @@
 package org;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.net.DatagramPacket;
 import java.net.DatagramSocket;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.StringJoiner;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -18,60 +20,75 @@ import java.util.concurrent.ConcurrentHashMap;
 public class ServerGUI {
     private static final int PORT = 10000;
     private static final int BUFFER_SIZE = 65535;
+    private static final byte[] LEGACY_NOTICE = MessageCodec.legacyNotice("This client is too old for the server, please update it.");
     private static final Map<String, Map<String, Client>> rooms = new ConcurrentHashMap<>();
-    private DatagramSocket socket;
-
-    public ServerGUI() {
+    private DatagramChannel channel;   // Difusiones: un buffer codificado una vez para todos
+    private DatagramSocket socket;     // El mismo canal, para recibir y para respuestas individuales
+
+    // Presencia: cada cambio de membresía es una versión nueva y se avisa con un solo delta por
+    // cliente (no las listas completas): los de la sala reciben user-joined/user-left y el resto
+    // room-count-changed, todos con la misma versión. Un cliente al que le falta una versión pide
+    // un snapshot (PRESENCE). Los cambios y el armado de deltas y snapshots van bajo el mismo lock;
+    // los envíos se hacen después de soltarlo (el cliente ya ordena por versión).
+    private final Object presence = new Object();
+    private long presenceVersion = 0;
+
+    public ServerGUI(String[] args) {
         try{
-            socket = new DatagramSocket(PORT);
+            int loops = Integer.parseInt(PacketDispatcher.option(args, "loops", "0"));
+            if (loops > 0) {
+                // Núcleo NIO: los handlers corren en los event loops y sus envíos no bloquean
+                List<ChatEventLoop> list = ChatEventLoop.start(PORT, loops,
+                        (data, from) -> new PacketHandler(data, from.getAddress(), from.getPort()).run());
+                channel = list.get(0).channel();
+                return;
+            }
+            channel = DatagramChannel.open();
+            channel.bind(new InetSocketAddress(PORT));
+            socket = channel.socket();
             System.out.println("UDP Server started on port: " + PORT);
-            listen();
+            listen(args);
         } catch (Exception e) {
             e.printStackTrace();
         }
     }
 
-    private void listen() {
-        while(true){
-            try {
-                byte[] buffer = new byte[BUFFER_SIZE];
-                DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
-                socket.receive(packet);          // Blocking wait until a UDP packet is received
-
-                new Thread(new PacketHandler(socket, packet)).start();
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-        }
+    // Un pool de workers procesa los datagramas (ver PacketDispatcher para las opciones)
+    private void listen(String[] args) {
+        PacketDispatcher dispatcher = new PacketDispatcher(socket,
+                packet -> new PacketHandler(ByteBuffer.wrap(packet.getData(), 0, packet.getLength()), packet.getAddress(), packet.getPort()).run(), args);
+        dispatcher.setBusyReply(MessageCodec.toBytes(new Message(Message.Type.TEXT, "Server", null, "Server busy, try again.")));
+        dispatcher.run();
     }
 
     static class Client {
         InetAddress ip;
         int port;
-        public Client(InetAddress ip, int port) { this.ip = ip; this.port = port; }
+        InetSocketAddress address;
+        public Client(InetAddress ip, int port) { this.ip = ip; this.port = port; this.address = new InetSocketAddress(ip, port); }
     }
 
     // Process individual packets
     class PacketHandler implements Runnable{
-        DatagramSocket socket;
-        DatagramPacket packet;
+        ByteBuffer data;
+        InetAddress ip;
+        int port;
 
-        public PacketHandler(DatagramSocket s, DatagramPacket p) {
-            this.socket = s;
-            this.packet = p;
+        public PacketHandler(ByteBuffer data, InetAddress ip, int port) {
+            this.data = data;
+            this.ip = ip;
+            this.port = port;
         }
 
         @Override
         public void run() {
             try {
                 // Get packet data
-                ByteArrayInputStream b = new ByteArrayInputStream(packet.getData(), 0, packet.getLength());
-                ObjectInputStream obj = new ObjectInputStream(b);
-                Message msg = (Message)obj.readObject();
+                Message msg = MessageCodec.decode(data);
 
                 // Identify sender
-                InetAddress senderIP = packet.getAddress();
-                int senderPort = packet.getPort();
+                InetAddress senderIP = ip;
+                int senderPort = port;
                 System.out.println(senderPort);
 
                 switch(msg.type){
@@ -94,10 +111,10 @@ public class ServerGUI {
                         handleLeave(msg, senderIP, senderPort);
                         break;
                     case USERS:
-                        handleListUsers(msg, senderIP, senderPort, false);
+                        handleListUsers(msg, senderIP, senderPort);
                         break;
                     case ROOMS:
-                        handleListRooms(senderIP, senderPort, false);
+                        handleListRooms(senderIP, senderPort);
                         break;
                     case MYROOMS:
                         handleListMyRooms(msg.sender, senderIP, senderPort);
@@ -108,9 +125,21 @@ public class ServerGUI {
                     case FILE:
                         handleFileBroadcast(msg);
                         break;
+                    case PRESENCE:
+                        handlePresenceSnapshot(msg, senderIP, senderPort);
+                        break;
                     default:
                         System.out.println("Unknown message. Try again!");
                 }
+            } catch (MessageCodec.VersionException e) {
+                System.out.println(e.getMessage() + " from " + ip + ":" + port);
+                if (e.legacy) {
+                    try {
+                        sendDatagram(ByteBuffer.wrap(LEGACY_NOTICE), new InetSocketAddress(ip, port));
+                    } catch (IOException io) {
+                        io.printStackTrace();
+                    }
+                }
             } catch (Exception e) {
                 e.printStackTrace();
             }
@@ -124,14 +153,20 @@ public class ServerGUI {
     }
 
     private void handleJoin(Message msg, InetAddress senderIP, int senderPort) {
-        // Create room if doesn't exist and add user
-        rooms.computeIfAbsent(msg.room, aux -> new ConcurrentHashMap<>())
-             .put(msg.sender, new Client(senderIP, senderPort));
+        List<Outgoing> deltas = List.of();
+        synchronized (presence) {
+            // Create room if doesn't exist and add user
+            Map<String, Client> users = rooms.computeIfAbsent(msg.room, aux -> new ConcurrentHashMap<>());
+            if (users.put(msg.sender, new Client(senderIP, senderPort)) == null) {
+                deltas = presenceDelta("user-joined", msg.room, msg.sender, null);
+            }
+        }
+        send(deltas);
         Message alert = new Message(Message.Type.TEXT, "Server", msg.room, msg.sender + " has joined the chat.");
         handleBroadcast(alert);
-        handleListUsers(msg, null, 0, true);
-        handleListRooms(null, 0, true);   // broadcast new list
-        broadcastMyRoomList(msg.room);
+        // El que entra recibe las listas; los demás ya tienen el delta
+        handleListUsers(msg, senderIP, senderPort);
+        handleListMyRooms(msg.sender, senderIP, senderPort);
     }
 
     // Send message to all users in the room except sender
@@ -155,77 +190,146 @@ public class ServerGUI {
         jsonString = "CMD:MSG:" + jsonString;
         Message jsonMsg = new Message(Message.Type.TEXT, msg.sender, msg.room, jsonString);
 
-        users.forEach((username, data) -> {
-            if(!username.equals(msg.sender)) {
-                sendPacket(jsonMsg, data.ip, data.port);
-            }
-        });
+        fanOut(jsonMsg, addresses(users, msg.sender));
     }
 
     // Send list of users in the room
-    private void handleListUsers(Message msg, InetAddress senderIP, int senderPort, boolean broadcastList) {
+    private void handleListUsers(Message msg, InetAddress senderIP, int senderPort) {
         Map<String, Client> users = rooms.get(msg.room);
         if(users == null) return;
 
-        StringJoiner joiner = new StringJoiner(",", "CMD:USERS:[", "]");
+        Message res = new Message(Message.Type.USERS, "Server", null, usersJson(users, maxContent(null, "")));
+        sendPacket(res, senderIP, senderPort);
+    }
+
+    // Send list of rooms
+    private void handleListRooms(InetAddress senderIP, int senderPort) {
+        String list = roomsJson(maxContent(null, ""));
+        System.out.println(list);
+        Message res = new Message(Message.Type.JOIN, "Server", null, list);
+        sendPacket(res, senderIP, senderPort);
+    }
+
+    // Send list of rooms
+    private void handleListMyRooms(String username, InetAddress senderIP, int senderPort) {
+        Message res = new Message(Message.Type.JOIN, "Server", null, myRoomsJson(username, maxContent(null, "")));
+        sendPacket(res, senderIP, senderPort);
+    }
+
+    private static String usersJson(Map<String, Client> users, int maxBytes) {
+        List<String> items = new ArrayList<>();
         int idx = 0;
         for(String user : users.keySet()) {
             // Build JSON object: {"user":"nombre"}
-            joiner.add(String.format("{\"id\":%d,\"name\":\"%s\",\"status\":\"online\"}", idx++, user));
-        }
-
-        Message res = new Message(Message.Type.USERS, "Server", null, joiner.toString());
-        if(broadcastList) {
-            users.forEach((u, client) -> {
-                sendPacket(res, client.ip, client.port);
-            });
-        }
-        else {
-            sendPacket(res, senderIP, senderPort);
+            items.add(String.format("{\"id\":%d,\"name\":\"%s\",\"status\":\"online\"}", idx++, user));
         }
+        return jsonList("CMD:USERS:", items, maxBytes);
     }
 
-    // Send list of rooms
-    private void handleListRooms(InetAddress senderIP, int senderPort, boolean broadcastList) {
-        StringJoiner joiner = new StringJoiner(",", "CMD:ROOMS:[", "]");
-
+    private static String roomsJson(int maxBytes) {
+        List<String> items = new ArrayList<>();
         rooms.forEach((room, users) -> {
             // Build JSON object: {"id":x, "name":"nombre", "users":y}
-            joiner.add(String.format("{\"name\":\"%s\",\"users\":%d}", room, users.size()));
+            items.add(String.format("{\"name\":\"%s\",\"users\":%d}", room, users.size()));
         });
-        System.out.println(joiner);
-        Message res = new Message(Message.Type.JOIN, "Server", null, joiner.toString());
-        if(broadcastList) {
-            rooms.forEach((roomName, userMap) -> {
-                userMap.forEach((username, client) -> {
-                    sendPacket(res, client.ip, client.port);
-                });
-            });
-        }
-        else {
-            sendPacket(res, senderIP, senderPort);
-        }
+        return jsonList("CMD:ROOMS:", items, maxBytes);
     }
 
-    // Send list of rooms
-    private void handleListMyRooms(String username, InetAddress senderIP, int senderPort) {
-        StringJoiner joiner = new StringJoiner(",", "CMD:MYROOMS:[", "]");
+    private static String myRoomsJson(String username, int maxBytes) {
+        List<String> items = new ArrayList<>();
         rooms.forEach((room, users) -> {
             if(users.containsKey(username)) {
-                joiner.add(String.format("{\"name\":\"%s\",\"users\":%d}", room, users.size()));
+                items.add(String.format("{\"name\":\"%s\",\"users\":%d}", room, users.size()));
             }
         });
-        Message res = new Message(Message.Type.JOIN, "Server", null, joiner.toString());
-        sendPacket(res, senderIP, senderPort);
+        return jsonList("CMD:MYROOMS:", items, maxBytes);
     }
 
-    private void broadcastMyRoomList(String room) {
-        Map<String, Client> userlist = rooms.get(room);
-        if(userlist == null) return;
+    // Bytes que le quedan al contenido de una respuesta del servidor en room que ya empieza con prefix
+    private static int maxContent(String room, String prefix) {
+        return MessageCodec.MAX_DATAGRAM - MessageCodec.encodedSize(new Message(Message.Type.TEXT, "Server", room, prefix));
+    }
 
-        userlist.forEach((user, to) -> {
-            handleListMyRooms(user, to.ip, to.port);
-        });
+    // prefix[item,item,...] con tantos elementos como quepan en maxBytes (UTF-8); los demás se omiten
+    private static String jsonList(String prefix, List<String> items, int maxBytes) {
+        StringJoiner joiner = new StringJoiner(",", prefix + "[", "]");
+        long bytes = prefix.length() + 2;
+        for (String item : items) {
+            bytes += item.getBytes(StandardCharsets.UTF_8).length + (joiner.length() > prefix.length() + 2 ? 1 : 0);
+            if (bytes > maxBytes) break;
+            joiner.add(item);
+        }
+        return joiner.toString();
+    }
+
+    // Un cambio de membresía en room, ya aplicado: una versión nueva y un datagrama por cliente.
+    // extra = dirección que también debe recibirlo aunque ya no esté en ninguna sala (el que sale).
+    // Solo con el lock de presencia tomado; devuelve los datagramas para enviarlos después de soltarlo.
+    private List<Outgoing> presenceDelta(String event, String room, String user, InetSocketAddress extra) {
+        long version = ++presenceVersion;
+        Map<String, Client> users = rooms.getOrDefault(room, Map.of());
+        int count = users.size();
+
+        Set<InetSocketAddress> members = new HashSet<>(addresses(users, null));
+        Set<InetSocketAddress> others = new HashSet<>();
+        rooms.forEach((roomName, userMap) -> userMap.forEach((username, client) -> others.add(client.address)));
+        if (extra != null) others.add(extra);
+        others.removeAll(members);
+
+        // {"v":12,"event":"user-joined","room":"General","user":"Juan","users":3}
+        String memberDelta = String.format("CMD:PRESENCE:{\"v\":%d,\"event\":\"%s\",\"room\":\"%s\",\"user\":\"%s\",\"users\":%d}",
+                version, event, room, user, count);
+        String countDelta = String.format("CMD:PRESENCE:{\"v\":%d,\"event\":\"room-count-changed\",\"room\":\"%s\",\"users\":%d}",
+                version, room, count);
+        return List.of(
+                new Outgoing(new Message(Message.Type.PRESENCE, "Server", room, memberDelta), members),
+                new Outgoing(new Message(Message.Type.PRESENCE, "Server", room, countDelta), others));
+    }
+
+    // Snapshot para un cliente que se atrasó: la versión y las tres listas, una por línea.
+    // La lista de usuarios es la de msg.room (la sala que el cliente está mirando).
+    // Si no caben en un datagrama van en varios, cada uno con la misma versión; una lista que sola
+    // no cabe se recorta (el cliente reemplaza la lista entera con cada línea).
+    private void handlePresenceSnapshot(Message msg, InetAddress senderIP, int senderPort) {
+        String header;
+        List<String> lists;
+        synchronized (presence) {
+            header = "CMD:SNAPSHOT:{\"v\":" + presenceVersion + "}";
+            int maxLine = maxContent(msg.room, header + "\n");
+            Map<String, Client> users = msg.room != null ? rooms.get(msg.room) : null;
+            lists = List.of(roomsJson(maxLine), myRoomsJson(msg.sender, maxLine),
+                    users != null ? usersJson(users, maxLine) : "CMD:USERS:[]");
+        }
+
+        List<String> parts = new ArrayList<>();
+        String part = header;
+        for (String list : lists) {
+            String joined = part + "\n" + list;
+            if (!part.equals(header) && maxContent(msg.room, joined) < 0) {
+                parts.add(part);
+                joined = header + "\n" + list;
+            }
+            part = joined;
+        }
+        parts.add(part);
+        for (String content : parts) {
+            sendPacket(new Message(Message.Type.PRESENCE, "Server", msg.room, content), senderIP, senderPort);
+        }
+    }
+
+    // Datagramas armados bajo un lock, para enviarlos después de soltarlo
+    private static final class Outgoing {
+        final Message msg;
+        final Collection<InetSocketAddress> recipients;
+
+        Outgoing(Message msg, Collection<InetSocketAddress> recipients) {
+            this.msg = msg;
+            this.recipients = recipients;
+        }
+    }
+
+    private void send(List<Outgoing> outgoing) {
+        for (Outgoing out : outgoing) fanOut(out.msg, out.recipients);
     }
 
     // // Send direct message to specific user
@@ -286,19 +390,20 @@ public class ServerGUI {
 
     // Handle user leaving the room
     private void handleLeave(Message msg, InetAddress senderIP, int senderPort) {
-        if(rooms.containsKey(msg.room)) {
-            rooms.get(msg.room).remove(msg.sender);
-
-            if(rooms.get(msg.room).isEmpty()) {
-                rooms.remove(msg.room); // Remove room if empty
+        boolean left;
+        List<Outgoing> deltas = List.of();
+        synchronized (presence) {
+            Map<String, Client> users = rooms.get(msg.room);
+            left = users != null && users.remove(msg.sender) != null;
+            if (left) {
+                if (users.isEmpty()) rooms.remove(msg.room); // Remove room if empty
+                deltas = presenceDelta("user-left", msg.room, msg.sender, new InetSocketAddress(senderIP, senderPort));
             }
-            else {
-                Message alert = new Message(Message.Type.TEXT, "Server", msg.room, msg.sender + " has left the chat.");
-                handleBroadcast(alert);
-                handleListUsers(msg, null, 0, true);   // broadcast new userlist
-                broadcastMyRoomList(msg.room);
-            }
-            handleListRooms(null, 0, true);   // broadcast new roomlist
+        }
+        send(deltas);
+        if (left) {
+            Message alert = new Message(Message.Type.TEXT, "Server", msg.room, msg.sender + " has left the chat.");
+            handleBroadcast(alert);
             handleListMyRooms(msg.sender, senderIP, senderPort);
         }
     }
@@ -329,30 +434,53 @@ public class ServerGUI {
         if (users == null) return;
 
         // Reenviamos el objeto binario TAL CUAL a los demás
-        users.forEach((username, client) -> {
-            if (!username.equals(msg.sender)) {
-                sendPacket(msg, client.ip, client.port);
+        fanOut(msg, addresses(users, msg.sender));
+    }
+
+
+    // Encode msg once and send the same bytes to every recipient.
+    // Each send gets its own view of the shared read-only buffer.
+    private void fanOut(Message msg, Collection<InetSocketAddress> recipients) {
+        ByteBuffer shared = ByteBuffer.wrap(MessageCodec.toBytes(msg)).asReadOnlyBuffer();
+        for (InetSocketAddress to : recipients) {
+            try {
+                sendDatagram(shared.duplicate(), to);
+            } catch (IOException e) {
+                e.printStackTrace();
             }
-        });
+        }
     }
 
+    private static List<InetSocketAddress> addresses(Map<String, Client> users, String except) {
+        List<InetSocketAddress> list = new ArrayList<>(users.size());
+        users.forEach((username, client) -> {
+            if (!username.equals(except)) list.add(client.address);
+        });
+        return list;
+    }
 
     // Send a Message object as UDP packet
     private void sendPacket(Message msg, InetAddress ip, int port) {
         try {
-            ByteArrayOutputStream b = new ByteArrayOutputStream();
-            ObjectOutputStream obj = new ObjectOutputStream(b);
-            obj.writeObject(msg);
-            byte[] data = b.toByteArray();
-
-            DatagramPacket newPacket = new DatagramPacket(data, data.length, ip, port);
-            socket.send(newPacket);
+            ByteBuffer out = MessageCodec.threadBuffer();
+            MessageCodec.encode(msg, out);
+            sendDatagram(out.flip(), new InetSocketAddress(ip, port));
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
+    // In an event loop the datagram goes through its per-peer queue; otherwise a blocking send
+    private void sendDatagram(ByteBuffer datagram, InetSocketAddress to) throws IOException {
+        ChatEventLoop loop = ChatEventLoop.current();
+        if (loop != null) {
+            loop.send(datagram, to);
+        } else {
+            channel.send(datagram, to);
+        }
+    }
+
     public static void main(String[] args) {
-        ServerGUI server = new ServerGUI();
+        ServerGUI server = new ServerGUI(args);
     }
 }
\ No newline at end of file
@@ -0,0 +1,164 @@
+package org;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Ida y vuelta del formato binario de MessageCodec, y rechazo de datagramas inválidos.
+ */
+public class MessageCodecTest
+    extends TestCase
+{
+    public MessageCodecTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( MessageCodecTest.class );
+    }
+
+    private static Message roundTrip( Message msg ) throws IOException
+    {
+        return MessageCodec.decode( ByteBuffer.wrap( MessageCodec.toBytes( msg ) ) );
+    }
+
+    public void testRoundTripAllFields() throws IOException
+    {
+        Message msg = new Message( Message.Type.DMFILE, "ana", "sala ñ", "hola 👋" );
+        msg.isPrivate = true;
+        msg.receiver = "beto";
+        msg.fileId = "1234-abcd";
+        msg.chunkIndex = 3;
+        msg.totalChunks = 7;
+        msg.data = new byte[] { 1, 2, 3 };
+        msg.fileData = new byte[] { (byte)0xFF, 0, 42 };
+
+        Message out = roundTrip( msg );
+        assertEquals( Message.Type.DMFILE, out.type );
+        assertTrue( out.isPrivate );
+        assertEquals( "ana", out.sender );
+        assertEquals( "sala ñ", out.room );
+        assertEquals( "hola 👋", out.content );
+        assertEquals( "beto", out.receiver );
+        assertEquals( "1234-abcd", out.fileId );
+        assertEquals( 3, out.chunkIndex );
+        assertEquals( 7, out.totalChunks );
+        assertTrue( Arrays.equals( msg.data, out.data ) );
+        assertTrue( Arrays.equals( msg.fileData, out.fileData ) );
+    }
+
+    public void testNullAndEmptyStrings() throws IOException
+    {
+        Message out = roundTrip( new Message( Message.Type.TEXT, null, "", null ) );
+        assertNull( out.sender );
+        assertEquals( "", out.room );
+        assertNull( out.content );
+        assertNull( out.receiver );
+        assertNull( out.fileId );
+        assertFalse( out.isPrivate );
+    }
+
+    public void testNullAndEmptyByteArrays() throws IOException
+    {
+        Message msg = new Message( Message.Type.FILE, "ana", "general", null );
+        msg.data = null;
+        msg.fileData = new byte[0];
+
+        Message out = roundTrip( msg );
+        assertNull( out.data );
+        assertNotNull( out.fileData );
+        assertEquals( 0, out.fileData.length );
+    }
+
+    public void testUnknownType()
+    {
+        byte[] bytes = MessageCodec.toBytes( new Message( Message.Type.TEXT, "ana", "general", "hola" ) );
+        bytes[1] = (byte)Message.Type.values().length;
+        try {
+            MessageCodec.decode( ByteBuffer.wrap( bytes ) );
+            fail( "Unknown type accepted" );
+        } catch ( IOException e ) {
+            assertFalse( e instanceof MessageCodec.VersionException );
+            assertEquals( "Unknown message type " + Message.Type.values().length, e.getMessage() );
+        }
+    }
+
+    public void testUnsupportedVersion()
+    {
+        byte[] bytes = MessageCodec.toBytes( new Message( Message.Type.TEXT, "ana", "general", "hola" ) );
+        bytes[0] = MessageCodec.VERSION + 1;
+        try {
+            MessageCodec.decode( ByteBuffer.wrap( bytes ) );
+            fail( "Other version accepted" );
+        } catch ( MessageCodec.VersionException e ) {
+            assertFalse( e.legacy );
+        } catch ( IOException e ) {
+            fail( "Expected VersionException, got " + e );
+        }
+    }
+
+    // Un cliente viejo manda la serialización de Java, que empieza con 0xACED
+    public void testLegacyJavaSerialization()
+    {
+        byte[] legacy = MessageCodec.legacyNotice( "actualiza el cliente" );
+        assertEquals( (byte)0xAC, legacy[0] );
+        assertEquals( (byte)0xED, legacy[1] );
+        try {
+            MessageCodec.decode( ByteBuffer.wrap( legacy ) );
+            fail( "Java serialization accepted" );
+        } catch ( MessageCodec.VersionException e ) {
+            assertTrue( e.legacy );
+        } catch ( IOException e ) {
+            fail( "Expected VersionException, got " + e );
+        }
+    }
+
+    // Cualquier recorte del datagrama se rechaza, tanto a mitad de un campo fijo como de un largo
+    public void testTruncated()
+    {
+        Message msg = new Message( Message.Type.FILE, "ana", "general", "foto.png" );
+        msg.fileId = "1234-abcd";
+        msg.fileData = new byte[] { 1, 2, 3, 4, 5 };
+        byte[] bytes = MessageCodec.toBytes( msg );
+
+        for ( int length = 1; length < bytes.length; length++ ) {
+            try {
+                MessageCodec.decode( ByteBuffer.wrap( bytes, 0, length ) );
+                fail( "Truncated message of " + length + " bytes accepted" );
+            } catch ( IOException e ) {
+                assertEquals( "Truncated message", e.getMessage() );
+            }
+        }
+    }
+
+    public void testEncodedSize()
+    {
+        Message msg = new Message( Message.Type.DMFILE, "ana", "sala ñ", "hola 👋" );
+        msg.fileData = new byte[] { 1, 2, 3 };
+        assertEquals( MessageCodec.toBytes( msg ).length, MessageCodec.encodedSize( msg ) );
+
+        Message empty = new Message( Message.Type.TEXT, null, null, null );
+        assertEquals( MessageCodec.toBytes( empty ).length, MessageCodec.encodedSize( empty ) );
+    }
+
+    // El decodificador empieza en la posición actual del buffer, no en el inicio del arreglo
+    public void testDecodeFromOffset() throws IOException
+    {
+        byte[] bytes = MessageCodec.toBytes( new Message( Message.Type.JOIN, "ana", "general", null ) );
+        ByteBuffer in = ByteBuffer.allocate( bytes.length + 4 );
+        in.putInt( 0xCAFE ).put( bytes ).flip();
+        in.position( 4 );
+
+        Message out = MessageCodec.decode( in );
+        assertEquals( Message.Type.JOIN, out.type );
+        assertEquals( "general", out.room );
+        assertFalse( in.hasRemaining() );
+    }
+}